@@ -108,6 +108,16 @@ import ch.randelshofer.quaqua.util.SizeConstrainedPanel;
  * If you are using JBrowser without the Quaqua Look and Feel, you may notice
  * that it does not fill the viewport with empty columns. To work around this,
  * you may want to use JBrowser together with the helper class JBrowserViewport.
+ * <p>
+ * <b>Fixed row height</b>
+ * <p>
+ * If a prototype cell value or a fixed cell height is set, the browser is in
+ * fixed row height mode. In this mode all column lists have a fixed cell width
+ * and a fixed cell height, which are taken from {@code setFixedCellWidth},
+ * {@code setFixedCellHeight} or from the prototype cell value. The column lists
+ * then never measure their cells for layout, and only paint the cells in their
+ * visible rectangle. This makes the browser usable with columns of many
+ * thousands of rows.
  *
  * <b>Known bugs</b>
  * <ul>
@@ -149,6 +159,11 @@ public class JBrowser extends javax.swing.JComponent implements Scrollable {
 	 * The fixed width of the column cells.
 	 */
 	private int fixedCellWidth = 175;
+	/**
+	 * The fixed height of the column cells, or -1 if the height is computed by the
+	 * column lists.
+	 */
+	private int fixedCellHeight = -1;
 	/**
 	 * The minimum width of the column cells.
 	 */
@@ -231,6 +246,10 @@ public class JBrowser extends javax.swing.JComponent implements Scrollable {
 	public final static String SELECTION_MODEL_PROPERTY = "selectionModel";
 	/** Bound property name for preferredCellWidth. */
 	public final static String FIXED_CELL_WIDTH_PROPERTY = "fixedCellWidth";
+	/** Bound property name for fixedCellHeight. */
+	public final static String FIXED_CELL_HEIGHT_PROPERTY = "fixedCellHeight";
+	/** Bound property name for prototypeCellValue. */
+	public final static String PROTOTYPE_CELL_VALUE_PROPERTY = "prototypeCellValue";
 	/** Bound property name for minimumCellWidth. */
 	public final static String MINIMUM_CELL_WIDTH_PROPERTY = "minimumCellWidth";
 	/** Bound property name for columnsResizable. */
@@ -414,8 +433,31 @@ public class JBrowser extends javax.swing.JComponent implements Scrollable {
 		return uiClassID;
 	}
 
-	public void setPrototypeCellValue(Object prototypeCellValue) {
-		this.prototypeCellValue = prototypeCellValue;
+	/**
+	 * Sets the prototype cell value of the browser. If this is non-null, the
+	 * column lists compute their cell height from the prototype, and their cell
+	 * width, if the fixed cell width is -1. This puts the browser into fixed row
+	 * height mode.
+	 * <p>
+	 * This is a JavaBeans bound property.
+	 *
+	 * @param newValue the prototype cell value, or null
+	 * @see #isFixedRowHeight
+	 */
+	public void setPrototypeCellValue(Object newValue) {
+		Object oldValue = prototypeCellValue;
+		prototypeCellValue = newValue;
+		for (int i = 0; i < getListColumnCount(); i++) {
+			JList l = getColumnList(i);
+			configureCellSize(l, l.getFixedCellWidth());
+		}
+		revalidate();
+
+		firePropertyChange(PROTOTYPE_CELL_VALUE_PROPERTY, oldValue, newValue);
+	}
+
+	public Object getPrototypeCellValue() {
+		return prototypeCellValue;
 	}
 
 	/**
@@ -817,8 +859,9 @@ public class JBrowser extends javax.swing.JComponent implements Scrollable {
 
 	/**
 	 * Sets the width of every cell in the browser. If {@code width} is -1, cell
-	 * widths are computed by applying {@code getPreferredSize} to the
-	 * {@code cellRenderer} component for each tree node.
+	 * widths are computed from the prototype cell value, or, if there is none, by
+	 * applying {@code getPreferredSize} to the {@code cellRenderer} component for
+	 * each tree node.
 	 * <p>
 	 * The default value of this property is 175.
 	 * <p>
@@ -832,7 +875,7 @@ public class JBrowser extends javax.swing.JComponent implements Scrollable {
 		int oldValue = fixedCellWidth;
 		fixedCellWidth = width;
 		for (int i = 0; i < getListColumnCount(); i++) {
-			getColumnList(i).setFixedCellWidth(width);
+			configureCellSize(getColumnList(i), width);
 		}
 		if (previewColumn != null) {
 			SizeConstrainedPanel p = (SizeConstrainedPanel) previewColumn.getViewport().getView();
@@ -849,6 +892,69 @@ public class JBrowser extends javax.swing.JComponent implements Scrollable {
 		return fixedCellWidth;
 	}
 
+	/**
+	 * Sets the height of every cell in the browser. If {@code height} is -1, cell
+	 * heights are computed from the prototype cell value, or, if there is none, by
+	 * applying {@code getPreferredSize} to the {@code cellRenderer} component for
+	 * each tree node.
+	 * <p>
+	 * The default value of this property is -1.
+	 * <p>
+	 * This is a JavaBeans bound property.
+	 *
+	 * @param height the height, in pixels, for all cells in this browser
+	 * @see #isFixedRowHeight
+	 */
+	public void setFixedCellHeight(int height) {
+		int oldValue = fixedCellHeight;
+		fixedCellHeight = height;
+		for (int i = 0; i < getListColumnCount(); i++) {
+			JList l = getColumnList(i);
+			configureCellSize(l, l.getFixedCellWidth());
+		}
+		revalidate();
+
+		firePropertyChange(FIXED_CELL_HEIGHT_PROPERTY, oldValue, fixedCellHeight);
+	}
+
+	public int getFixedCellHeight() {
+		return fixedCellHeight;
+	}
+
+	/**
+	 * Returns true, if the browser is in fixed row height mode. This is the case,
+	 * if a prototype cell value or a fixed cell height has been set.
+	 * <p>
+	 * In this mode, the column lists do not measure their cells, when their
+	 * models change, and the preferred width of a column is computed from its
+	 * visible cells only.
+	 */
+	public boolean isFixedRowHeight() {
+		return fixedCellHeight != -1 || prototypeCellValue != null;
+	}
+
+	/**
+	 * Applies the prototype cell value, the fixed cell height and the specified
+	 * width to a column list. If the width is -1 and there is a prototype cell
+	 * value, the width of the prototype is used.
+	 */
+	private void configureCellSize(JList l, int width) {
+		if (prototypeCellValue != null) {
+			// This sets the fixed cell width and height of the list to the
+			// size of the prototype
+			l.setPrototypeCellValue(prototypeCellValue);
+		} else {
+			l.setPrototypeCellValue(null);
+			l.setFixedCellHeight(-1);
+		}
+		if (fixedCellHeight != -1) {
+			l.setFixedCellHeight(fixedCellHeight);
+		}
+		if (width != -1 || prototypeCellValue == null) {
+			l.setFixedCellWidth(width);
+		}
+	}
+
 	/**
 	 * Sets the minimum width of cells in the browser. This width affects the
 	 * minimum width of columns, when the user resizes them.
@@ -903,6 +1009,9 @@ public class JBrowser extends javax.swing.JComponent implements Scrollable {
 	 */
 	public int getPreferredColumnWidth(int column) {
 		JList l = getColumnList(column);
+		if (isFixedRowHeight()) {
+			return getPreferredVisibleCellWidth(l);
+		}
 		l.setFixedCellWidth(-1);
 		// int width = l.getPreferredScrollableViewportSize().width;
 		int width = l.getPreferredSize().width;
@@ -910,6 +1019,29 @@ public class JBrowser extends javax.swing.JComponent implements Scrollable {
 		return width;
 	}
 
+	/**
+	 * Returns the width of the widest visible cell of a column list. If the list
+	 * is not showing, the first rows up to the visible row count of the list are
+	 * measured instead.
+	 */
+	private int getPreferredVisibleCellWidth(JList l) {
+		ListModel m = l.getModel();
+		int first = l.getFirstVisibleIndex();
+		int last = l.getLastVisibleIndex();
+		if (first == -1) {
+			first = 0;
+			last = Math.min(m.getSize(), l.getVisibleRowCount()) - 1;
+		}
+		ListCellRenderer r = l.getCellRenderer();
+		int width = 0;
+		for (int i = first; i <= last; i++) {
+			Component c = r.getListCellRendererComponent(l, m.getElementAt(i), i, false, false);
+			width = Math.max(width, c.getPreferredSize().width);
+		}
+		Insets insets = l.getInsets();
+		return width + insets.left + insets.right;
+	}
+
 	/**
 	 * Sets the width of the preview column.
 	 *
@@ -1010,7 +1142,12 @@ public class JBrowser extends javax.swing.JComponent implements Scrollable {
 		this.cellRenderer = cellRenderer;
 
 		for (int i = 0; i < getListColumnCount(); i++) {
-			getColumnList(i).setCellRenderer(cellRenderer);
+			// The list measures the prototype with the new renderer, so we
+			// have to restore the size of the cells
+			JList l = getColumnList(i);
+			int width = l.getFixedCellWidth();
+			l.setCellRenderer(cellRenderer);
+			configureCellSize(l, width);
 		}
 
 		firePropertyChange(CELL_RENDERER_PROPERTY, oldValue, cellRenderer);
@@ -1508,9 +1645,7 @@ public class JBrowser extends javax.swing.JComponent implements Scrollable {
 			l.setCellRenderer(cellRenderer);
 		}
 
-		if (prototypeCellValue != null) {
-			l.setPrototypeCellValue(prototypeCellValue);
-		}
+		configureCellSize(l, fixedCellWidth);
 
 		l.setSelectionModel(new ColumnSelectionModel());
 
@@ -1532,7 +1667,6 @@ public class JBrowser extends javax.swing.JComponent implements Scrollable {
 		l.addMouseListener(columnMouseListener);
 		l.addKeyListener(columnKeyListener);
 		l.addFocusListener(columnFocusListener);
-		l.setFixedCellWidth(fixedCellWidth);
 		l.setDragEnabled(getDragEnabled());
 		l.setTransferHandler(getTransferHandler());
 		JScrollPane sp = createScrollPane(l, path.getPathCount() - 1);
@@ -1558,6 +1692,11 @@ public class JBrowser extends javax.swing.JComponent implements Scrollable {
 			if (renderer instanceof Component) {
 				SwingUtilities.updateComponentTreeUI((Component) renderer);
 			}
+
+			// The size of the prototype depends on the look and feel
+			if (isFixedRowHeight() && renderer != null) {
+				configureCellSize(this, getFixedCellWidth());
+			}
 		}
 
 		@Override
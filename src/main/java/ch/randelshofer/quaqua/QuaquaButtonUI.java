@@ -254,8 +254,8 @@ public class QuaquaButtonUI extends BasicButtonUI implements VisuallyLayoutable
 				// have no other way to provide feedback about the pressed
 				// state.
 				if (icon instanceof FilterableIcon) {
-					tmpIcon = ((FilterableIcon) icon).filter(new HalfbrightFilter());
-					shadowIcon = ((FilterableIcon) icon).filter(new ShadowFilter());
+					tmpIcon = ((FilterableIcon) icon).filter(HalfbrightFilter.getInstance());
+					shadowIcon = ((FilterableIcon) icon).filter(ShadowFilter.getInstance());
 				} else {
 					tmpIcon = new ImageIcon(HalfbrightFilter.createHalfbrightImage(((ImageIcon) icon).getImage()));
 					shadowIcon = new ImageIcon(ShadowFilter.createShadowImage(((ImageIcon) icon).getImage()));
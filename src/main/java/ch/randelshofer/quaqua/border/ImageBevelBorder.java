@@ -10,24 +10,19 @@ package ch.randelshofer.quaqua.border;
 import java.awt.Color;
 import java.awt.Component;
 import java.awt.Graphics;
-import java.awt.Graphics2D;
 import java.awt.Image;
 import java.awt.Insets;
-import java.awt.Rectangle;
-import java.awt.TexturePaint;
 import java.awt.image.BufferedImage;
 
 import javax.swing.border.Border;
 
-import ch.randelshofer.quaqua.util.Images;
-
 /**
  * Draws a filled bevel border using an image and insets. The image must consist
  * of a bevel and a fill area.
  * <p>
  * The insets and the size of the image are used do determine which parts of the
  * image shall be used to draw the corners and edges of the bevel as well the
- * fill area.
+ * fill area. The image is painted with a {@link NinePatch}.
  *
  * <p>
  * For example, if you provide an image of size 10,10 and a insets of size 2, 2,
@@ -63,6 +58,11 @@ public class ImageBevelBorder implements Border {
 	 * with this color instead with the image.
 	 */
 	private Color fillColor;
+	/**
+	 * The nine-patch, which paints the image. It is created, when the border is
+	 * painted for the first time.
+	 */
+	private NinePatch ninePatch;
 
 	/**
 	 * Creates a new instance with the given image and insets. The image has the
@@ -137,130 +137,10 @@ public class ImageBevelBorder implements Border {
 			return;
 		}
 
-		// Convert image to buffered image (and keep the buffered image).
-		image = Images.toBufferedImage(image);
-		BufferedImage bufImg = (BufferedImage) image;
-
-		// Cast Graphics to Graphics2D
-		// Workaround for Java 1.4 and 1.4 on Mac OS X 10.4. We create a new
-		// Graphics object instead of just casting the provided one. This is
-		// because drawing texture paints appears to confuse the Graphics object.
-		Graphics2D g = (Graphics2D) gr.create();
-
-		// Set some variables for easy access of insets and image size
-		int top = imageInsets.top;
-		int left = imageInsets.left;
-		int bottom = imageInsets.bottom;
-		int right = imageInsets.right;
-		int imgWidth = bufImg.getWidth();
-		int imgHeight = bufImg.getHeight();
-
-		// Optimisation: Draw image directly if it fits into the component
-		if (fillContentArea) {
-			if (width == imgWidth && height == imgHeight) {
-				g.drawImage(image, x, y, c);
-				g.dispose();
-				return;
-			}
+		if (ninePatch == null) {
+			ninePatch = new NinePatch(image, imageInsets, fillContentArea, fillColor);
 		}
-
-		// Optimisation: Remove insets, if image width or image height fits
-		if (width == imgWidth) {
-			left = imgWidth;
-			right = 0;
-		}
-		if (height == imgHeight) {
-			top = imgHeight;
-			bottom = 0;
-		}
-
-		// Adjust insets if component is too small
-		if (width < left + right) {
-			left = Math.min(left, width / 2); // Math.max(0, left + (width - left - right) / 2);
-			right = width - left;
-		}
-		if (height < top + bottom) {
-			top = Math.min(top, height / 2); // Math.max(0, top + (height - top - bottom) / 2);
-			bottom = height - top;
-		}
-
-		// Draw the Corners
-		if (top > 0 && left > 0) {
-			g.drawImage(image, x, y, x + left, y + top, 0, 0, left, top, c);
-		}
-		if (top > 0 && right > 0) {
-			// g.fillRect(x+width-right, y, x+width, y+top);
-			g.drawImage(image, x + width - right, y, x + width, y + top, imgWidth - right, 0, imgWidth, top, c);
-		}
-		if (bottom > 0 && left > 0) {
-			g.drawImage(image, x, y + height - bottom, x + left, y + height, 0, imgHeight - bottom, left, imgHeight, c);
-		}
-		if (bottom > 0 && right > 0) {
-			g.drawImage(image, x + width - right, y + height - bottom, x + width, y + height, imgWidth - right,
-					imgHeight - bottom, imgWidth, imgHeight, c);
-		}
-		// Draw the edges
-		BufferedImage subImg = null;
-		TexturePaint paint;
-
-		// North
-		if (top > 0 && left + right < width) {
-			if (imgWidth > right + left) {
-				subImg = bufImg.getSubimage(left, 0, imgWidth - right - left, top);
-				paint = new TexturePaint(subImg, new Rectangle(x + left, y, imgWidth - left - right, top));
-				g.setPaint(paint);
-				g.fillRect(x + left, y, width - left - right, top);
-			}
-		}
-		// South
-		if (bottom > 0 && left + right < width) {
-			if (imgHeight > bottom && imgWidth > right + left) {
-				subImg = bufImg.getSubimage(left, imgHeight - bottom, imgWidth - right - left, bottom);
-				paint = new TexturePaint(subImg,
-						new Rectangle(x + left, y + height - bottom, imgWidth - left - right, bottom));
-				g.setPaint(paint);
-				g.fillRect(x + left, y + height - bottom, width - left - right, bottom);
-			}
-		}
-		// West
-		if (left > 0 && top + bottom < height) {
-			if (imgHeight > top + bottom) {
-				subImg = bufImg.getSubimage(0, top, left, imgHeight - top - bottom);
-				paint = new TexturePaint(subImg, new Rectangle(x, y + top, left, imgHeight - top - bottom));
-				g.setPaint(paint);
-				g.fillRect(x, y + top, left, height - top - bottom);
-			}
-		}
-		// East
-		if (right > 0 && top + bottom < height) {
-			if (imgWidth > right + right && imgHeight > top + bottom) {
-				subImg = bufImg.getSubimage(imgWidth - right, top, right, imgHeight - top - bottom);
-				paint = new TexturePaint(subImg,
-						new Rectangle(x + width - right, y + top, right, imgHeight - top - bottom));
-				g.setPaint(paint);
-				g.fillRect(x + width - right, y + top, right, height - top - bottom);
-			}
-		}
-
-		// Fill the center
-		if (fillContentArea) {
-			if (left + right < width && top + bottom < height) {
-				if (fillColor != null) {
-					g.setColor(fillColor);
-					g.fillRect(x + left, y + top, width - right - left, height - top - bottom);
-				} else {
-					if (imgWidth - right - left > 0 && imgHeight - top - bottom > 0) {
-						subImg = bufImg.getSubimage(left, top, imgWidth - right - left, imgHeight - top - bottom);
-						paint = new TexturePaint(subImg,
-								new Rectangle(x + left, y + top, imgWidth - right - left, imgHeight - top - bottom));
-						g.setPaint(paint);
-						g.fillRect(x + left, y + top, width - right - left, height - top - bottom);
-					}
-				}
-			}
-		}
-
-		g.dispose();
+		ninePatch.paint(c, gr, x, y, width, height);
 	}
 
 	public Image getImage() {
@@ -269,6 +149,7 @@ public class ImageBevelBorder implements Border {
 
 	public void setImage(BufferedImage image) {
 		this.image = image;
+		this.ninePatch = null;
 	}
 
 	public static class UIResource extends ImageBevelBorder implements javax.swing.plaf.UIResource {
@@ -0,0 +1,347 @@
+/*
+ * @(#)NinePatch.java
+ *
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package ch.randelshofer.quaqua.border;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
+import java.awt.HeadlessException;
+import java.awt.Image;
+import java.awt.Insets;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+
+import ch.randelshofer.quaqua.util.CachedPainter;
+import ch.randelshofer.quaqua.util.Images;
+
+/**
+ * Paints an image as a nine-patch: the corners of the image are drawn as is,
+ * the edges are repeated along the sides, and the center is repeated over the
+ * inner area.
+ * <p>
+ * The image is sliced once into nine compatible images, which Java2D can keep
+ * in video memory. The slices of the edges and the center are pre-tiled to a
+ * minimal size, so that even slices which are only one pixel wide are drawn
+ * with a few calls to drawImage. All parts are drawn without scaling.
+ * <p>
+ * The results for small sizes are cached by a {@link CachedPainter}, so that
+ * painting a nine-patch of a size which has been painted before takes a single
+ * call to drawImage. The cached results count against the global budget of the
+ * CachedPainter.
+ * <p>
+ * The nine-patch uses the same layout as {@link ImageBevelBorder}: if the
+ * painted area is smaller than the insets, the insets are reduced, and if its
+ * width or height matches the image, the image is not sliced in that
+ * direction.
+ *
+ * @version $Id$
+ */
+public class NinePatch {
+	/**
+	 * The maximal number of cached results.
+	 */
+	private final static int MAX_CACHED_IMAGE_COUNT = 32;
+	/**
+	 * The minimal size of a pre-tiled slice in the direction in which it is
+	 * repeated.
+	 */
+	private final static int MIN_TILE_SIZE = 64;
+
+	private final BufferedImage image;
+	private final Insets insets;
+	private final boolean fillContentArea;
+	private final Color fillColor;
+	private final int imgWidth;
+	private final int imgHeight;
+
+	// The slices for the insets of the image, or null if a slice is empty.
+	private BufferedImage northWest, north, northEast;
+	private BufferedImage west, center, east;
+	private BufferedImage southWest, south, southEast;
+
+	/**
+	 * Caches the results for small sizes.
+	 */
+	private final Painter painter = new Painter();
+
+	/**
+	 * Creates a new nine-patch.
+	 *
+	 * @param img             The image.
+	 * @param imageInsets     The insets of the image, which determine the corners
+	 *                        and the edges.
+	 * @param fillContentArea True, if the center shall be painted.
+	 * @param fillColor       If this is non-null, the center is filled with this
+	 *                        color instead of with the image.
+	 */
+	public NinePatch(Image img, Insets imageInsets, boolean fillContentArea, Color fillColor) {
+		BufferedImage bufImg = Images.toBufferedImage(img);
+		this.imgWidth = bufImg.getWidth();
+		this.imgHeight = bufImg.getHeight();
+		this.image = createCompatibleImage(imgWidth, imgHeight);
+		copy(bufImg, 0, 0, imgWidth, imgHeight, image);
+		this.insets = (Insets) imageInsets.clone();
+		this.fillContentArea = fillContentArea;
+		this.fillColor = fillColor;
+
+		int top = insets.top;
+		int left = insets.left;
+		int bottom = insets.bottom;
+		int right = insets.right;
+		int innerWidth = imgWidth - left - right;
+		int innerHeight = imgHeight - top - bottom;
+
+		northWest = slice(0, 0, left, top, false, false);
+		northEast = slice(imgWidth - right, 0, right, top, false, false);
+		southWest = slice(0, imgHeight - bottom, left, bottom, false, false);
+		southEast = slice(imgWidth - right, imgHeight - bottom, right, bottom, false, false);
+		north = slice(left, 0, innerWidth, top, true, false);
+		south = slice(left, imgHeight - bottom, innerWidth, bottom, true, false);
+		west = slice(0, top, left, innerHeight, false, true);
+		east = slice(imgWidth - right, top, right, innerHeight, false, true);
+		center = slice(left, top, innerWidth, innerHeight, true, true);
+	}
+
+	/**
+	 * Paints the nine-patch.
+	 *
+	 * @param g      the paint graphics
+	 * @param x      the x position of the nine-patch
+	 * @param y      the y position of the nine-patch
+	 * @param width  the width of the nine-patch
+	 * @param height the height of the nine-patch
+	 */
+	public void paint(Graphics g, int x, int y, int width, int height) {
+		paint(null, g, x, y, width, height);
+	}
+
+	/**
+	 * Paints the nine-patch for the specified component.
+	 *
+	 * @param c      the component for which the nine-patch is painted, or null.
+	 *               The results are cached per graphics configuration of the
+	 *               component.
+	 * @param g      the paint graphics
+	 * @param x      the x position of the nine-patch
+	 * @param y      the y position of the nine-patch
+	 * @param width  the width of the nine-patch
+	 * @param height the height of the nine-patch
+	 */
+	public void paint(Component c, Graphics g, int x, int y, int width, int height) {
+		if (width <= 0 || height <= 0) {
+			return;
+		}
+
+		// Optimisation: Draw image directly if it fits into the component
+		if (fillContentArea && width == imgWidth && height == imgHeight) {
+			g.drawImage(image, x, y, null);
+			return;
+		}
+
+		painter.paintNinePatch(c, g, x, y, width, height);
+	}
+
+	/**
+	 * Caches the results of the nine-patch. The CachedPainter paints large
+	 * results directly into the paint graphics.
+	 */
+	private class Painter extends CachedPainter {
+		Painter() {
+			super(MAX_CACHED_IMAGE_COUNT);
+		}
+
+		void paintNinePatch(Component c, Graphics g, int x, int y, int width, int height) {
+			paint(c, g, x, y, width, height, null);
+		}
+
+		@Override
+		protected void paintToImage(Component c, Graphics g, int w, int h, Object args) {
+			// Large results are painted into the graphics of the caller, so we
+			// must not change its color.
+			Graphics pg = g.create();
+			try {
+				paintPatches(pg, 0, 0, w, h);
+			} finally {
+				pg.dispose();
+			}
+		}
+
+		@Override
+		protected Image createImage(Component c, int w, int h, GraphicsConfiguration config) {
+			if (config == null) {
+				return createCompatibleImage(w, h);
+			}
+			return config.createCompatibleImage(w, h, Transparency.TRANSLUCENT);
+		}
+	}
+
+	/**
+	 * Paints the corners, edges and the center.
+	 */
+	private void paintPatches(Graphics g, int x, int y, int width, int height) {
+		// Set some variables for easy access of insets and image size
+		int top = insets.top;
+		int left = insets.left;
+		int bottom = insets.bottom;
+		int right = insets.right;
+
+		// Optimisation: Remove insets, if image width or image height fits
+		if (width == imgWidth) {
+			left = imgWidth;
+			right = 0;
+		}
+		if (height == imgHeight) {
+			top = imgHeight;
+			bottom = 0;
+		}
+
+		// Adjust insets if component is too small
+		if (width < left + right) {
+			left = Math.min(left, width / 2);
+			right = width - left;
+		}
+		if (height < top + bottom) {
+			top = Math.min(top, height / 2);
+			bottom = height - top;
+		}
+
+		// Use the slices if the insets have not been adjusted, otherwise
+		// draw the parts from the image
+		boolean isSliced = top == insets.top && left == insets.left && bottom == insets.bottom
+				&& right == insets.right;
+		int innerWidth = imgWidth - left - right;
+		int innerHeight = imgHeight - top - bottom;
+
+		// Draw the Corners
+		if (top > 0 && left > 0) {
+			draw(g, isSliced ? northWest : null, x, y, left, top, 0, 0, left, top);
+		}
+		if (top > 0 && right > 0) {
+			draw(g, isSliced ? northEast : null, x + width - right, y, right, top, imgWidth - right, 0, right,
+					top);
+		}
+		if (bottom > 0 && left > 0) {
+			draw(g, isSliced ? southWest : null, x, y + height - bottom, left, bottom, 0, imgHeight - bottom, left,
+					bottom);
+		}
+		if (bottom > 0 && right > 0) {
+			draw(g, isSliced ? southEast : null, x + width - right, y + height - bottom, right, bottom,
+					imgWidth - right, imgHeight - bottom, right, bottom);
+		}
+
+		// Draw the edges
+		// North
+		if (top > 0 && left + right < width && innerWidth > 0) {
+			draw(g, isSliced ? north : null, x + left, y, width - left - right, top, left, 0, innerWidth, top);
+		}
+		// South
+		if (bottom > 0 && left + right < width && imgHeight > bottom && innerWidth > 0) {
+			draw(g, isSliced ? south : null, x + left, y + height - bottom, width - left - right, bottom, left,
+					imgHeight - bottom, innerWidth, bottom);
+		}
+		// West
+		if (left > 0 && top + bottom < height && innerHeight > 0) {
+			draw(g, isSliced ? west : null, x, y + top, left, height - top - bottom, 0, top, left, innerHeight);
+		}
+		// East
+		if (right > 0 && top + bottom < height && imgWidth > right + right && innerHeight > 0) {
+			draw(g, isSliced ? east : null, x + width - right, y + top, right, height - top - bottom,
+					imgWidth - right, top, right, innerHeight);
+		}
+
+		// Fill the center
+		if (fillContentArea && left + right < width && top + bottom < height) {
+			if (fillColor != null) {
+				g.setColor(fillColor);
+				g.fillRect(x + left, y + top, width - right - left, height - top - bottom);
+			} else if (innerWidth > 0 && innerHeight > 0) {
+				draw(g, isSliced ? center : null, x + left, y + top, width - right - left, height - top - bottom,
+						left, top, innerWidth, innerHeight);
+			}
+		}
+	}
+
+	/**
+	 * Fills the destination rectangle by repeating a part of the image, starting
+	 * at the top left corner of the rectangle.
+	 *
+	 * @param slice The pre-tiled slice of the part, or null, if the part shall
+	 *              be drawn from the image.
+	 */
+	private void draw(Graphics g, BufferedImage slice, int dx, int dy, int dw, int dh, int sx, int sy, int sw,
+			int sh) {
+		BufferedImage src;
+		if (slice != null) {
+			src = slice;
+			sx = 0;
+			sy = 0;
+			sw = slice.getWidth();
+			sh = slice.getHeight();
+		} else {
+			src = image;
+		}
+		for (int ty = 0; ty < dh; ty += sh) {
+			int th = Math.min(sh, dh - ty);
+			for (int tx = 0; tx < dw; tx += sw) {
+				int tw = Math.min(sw, dw - tx);
+				g.drawImage(src, dx + tx, dy + ty, dx + tx + tw, dy + ty + th, sx, sy, sx + tw, sy + th, null);
+			}
+		}
+	}
+
+	/**
+	 * Copies a part of the image into a new compatible image. If the part is
+	 * repeated horizontally or vertically, it is repeated in the new image until
+	 * it has at least the minimal tile size.
+	 *
+	 * @return The slice, or null, if the part is empty.
+	 */
+	private BufferedImage slice(int sx, int sy, int sw, int sh, boolean isRepeatedX, boolean isRepeatedY) {
+		if (sw <= 0 || sh <= 0 || sx < 0 || sy < 0 || sx + sw > imgWidth || sy + sh > imgHeight) {
+			return null;
+		}
+		int w = isRepeatedX ? sw * ((MIN_TILE_SIZE + sw - 1) / sw) : sw;
+		int h = isRepeatedY ? sh * ((MIN_TILE_SIZE + sh - 1) / sh) : sh;
+		BufferedImage slice = createCompatibleImage(w, h);
+		for (int y = 0; y < h; y += sh) {
+			for (int x = 0; x < w; x += sw) {
+				copy(image, sx, sy, sw, sh, slice, x, y);
+			}
+		}
+		return slice;
+	}
+
+	private static void copy(BufferedImage src, int sx, int sy, int sw, int sh, BufferedImage dst) {
+		copy(src, sx, sy, sw, sh, dst, 0, 0);
+	}
+
+	private static void copy(BufferedImage src, int sx, int sy, int sw, int sh, BufferedImage dst, int dx, int dy) {
+		Graphics2D g = dst.createGraphics();
+		g.setComposite(AlphaComposite.Src);
+		g.drawImage(src, dx, dy, dx + sw, dy + sh, sx, sy, sx + sw, sy + sh, null);
+		g.dispose();
+	}
+
+	/**
+	 * Creates a translucent image, which is compatible with the default screen.
+	 */
+	private static BufferedImage createCompatibleImage(int width, int height) {
+		if (!GraphicsEnvironment.isHeadless()) {
+			try {
+				return GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+						.getDefaultConfiguration().createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+			} catch (HeadlessException e) {
+				// fall through
+			}
+		}
+		return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+	}
+}
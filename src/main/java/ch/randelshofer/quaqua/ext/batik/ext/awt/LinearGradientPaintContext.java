@@ -407,6 +407,8 @@ final class LinearGradientPaintContext extends MultipleGradientPaintContext {
 		}
 
 		final int[] grad = gradient;
+		final int fpStep = (int) (step * (1 << 16)); // fix point step
+		final int fpMax = fastGradientArraySize << 16;
 
 		for (int i = 0; i < h; i++) { // for every row
 			// initialize current value to be start.
@@ -422,15 +424,14 @@ final class LinearGradientPaintContext extends MultipleGradientPaintContext {
 			// scale for gradient array...
 			g *= fastGradientArraySize;
 			g += 0.5; // rounding factor
+			int fpG = (int) (g * (1 << 16));
 			final int rowLimit = off + w; // end of row iteration
 			while (off < rowLimit) {
-				int idx = (int) g;
-				if (idx >= fastGradientArraySize) {
-					g -= fastGradientArraySize;
-					idx -= fastGradientArraySize;
+				if (fpG >= fpMax) {
+					fpG -= fpMax;
 				}
-				pixels[off++] = grad[idx];
-				g += step;
+				pixels[off++] = grad[fpG >> 16];
+				fpG += fpStep;
 			}
 
 			off += adjust; // change in off from row to row
@@ -468,25 +469,26 @@ final class LinearGradientPaintContext extends MultipleGradientPaintContext {
 				step += 2.0;
 			}
 			final int reflectMax = 2 * fastGradientArraySize;
+			final int fpReflectMax = reflectMax << 16;
 
 			// Scale for gradient array.
 			g *= fastGradientArraySize;
 			g += 0.5;
 			step *= fastGradientArraySize;
+			int fpG = (int) (g * (1 << 16));
+			final int fpStep = (int) (step * (1 << 16)); // fix point step
 			final int rowLimit = off + w; // end of row iteration
 			while (off < rowLimit) {
-				int idx = (int) g;
-				if (idx >= reflectMax) {
-					g -= reflectMax;
-					idx -= reflectMax;
+				if (fpG >= fpReflectMax) {
+					fpG -= fpReflectMax;
 				}
-
+				int idx = fpG >> 16;
 				if (idx <= fastGradientArraySize) {
 					pixels[off++] = grad[idx];
 				} else {
 					pixels[off++] = grad[reflectMax - idx];
 				}
-				g += step;
+				fpG += fpStep;
 			}
 
 			off += adjust; // change in off from row to row
@@ -32,7 +32,9 @@ import java.awt.image.DirectColorModel;
 import java.awt.image.Raster;
 import java.awt.image.SinglePixelPackedSampleModel;
 import java.awt.image.WritableRaster;
-import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import ch.randelshofer.quaqua.ext.batik.ext.awt.image.GraphicsUtil;
 
@@ -76,11 +78,39 @@ abstract class MultipleGradientPaintContext implements PaintContext {
 	private static ColorModel srgbmodel_A = new DirectColorModel(ColorSpace.getInstance(ColorSpace.CS_sRGB), 32,
 			0xff0000, 0xFF00, 0xFF, 0xFF000000, false, DataBuffer.TYPE_INT);
 
-	/** The cached colorModel */
-	protected static ColorModel cachedModel;
+	/**
+	 * The maximal number of pixels of a raster which is kept for reuse by a
+	 * thread.
+	 */
+	private static final int MAX_CACHED_RASTER_SIZE = 256 * 256;
+
+	/**
+	 * The rasters which are reusable among the instances on the same thread. The
+	 * array holds one raster per data model, see {@link #getModelIndex}.
+	 */
+	private static final ThreadLocal<WritableRaster[]> cachedRasters = new ThreadLocal<WritableRaster[]>() {
+		@Override
+		protected WritableRaster[] initialValue() {
+			return new WritableRaster[4];
+		}
+	};
+
+	/** The maximal number of cached gradient lookups. */
+	private static final int MAX_CACHED_LOOKUPS = 64;
 
-	/** The cached raster, which is reusable among instances */
-	protected static WeakReference cached;
+	/**
+	 * The gradient lookups, which are shared among instances with the same
+	 * fractions, colors, cycle method and color space.
+	 */
+	private static final Map<LookupKey, Lookup> cachedLookups = new LinkedHashMap<LookupKey, Lookup>(16, 0.75f,
+			true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<LookupKey, Lookup> eldest) {
+			return size() > MAX_CACHED_LOOKUPS;
+		}
+	};
 
 	/** Raster is reused whenever possible */
 	protected WritableRaster saved;
@@ -195,6 +225,61 @@ abstract class MultipleGradientPaintContext implements PaintContext {
 			AffineTransform t, RenderingHints hints, float[] fractions, Color[] colors,
 			MultipleGradientPaint.CycleMethodEnum cycleMethod, MultipleGradientPaint.ColorSpaceEnum colorSpace)
 			throws NoninvertibleTransformException {
+		// The inverse transform is needed to from device to user space.
+		// Get all the components of the inverse transform matrix.
+		AffineTransform tInv = t.createInverse();
+
+		double m[] = new double[6];
+		tInv.getMatrix(m);
+		a00 = (float) m[0];
+		a10 = (float) m[1];
+		a01 = (float) m[2];
+		a11 = (float) m[3];
+		a02 = (float) m[4];
+		a12 = (float) m[5];
+
+		// copy some flags
+		this.cycleMethod = cycleMethod;
+		this.colorSpace = colorSpace;
+
+		// PATCH Werner Randelshofer: ColorModel can be null!
+
+		// Setup an example Model, we may refine it later.
+		if (cm != null && cm.getColorSpace() == lrgbmodel_A.getColorSpace()) {
+			dataModel = lrgbmodel_A;
+		} else if (cm == null || cm.getColorSpace() == srgbmodel_A.getColorSpace()) {
+			dataModel = srgbmodel_A;
+		} else {
+			throw new IllegalArgumentException("Unsupported ColorSpace for interpolation");
+		}
+
+		gradientUnderflow = colors[0].getRGB();
+		gradientOverflow = colors[colors.length - 1].getRGB();
+
+		// Reuse the gradient lookup of a previous instance if possible
+		LookupKey key = new LookupKey(fractions, colors, cycleMethod, colorSpace, dataModel);
+		Lookup lookup;
+		synchronized (cachedLookups) {
+			lookup = cachedLookups.get(key);
+		}
+		if (lookup == null) {
+			calculateGradient(fractions, colors);
+			lookup = new Lookup(this);
+			synchronized (cachedLookups) {
+				cachedLookups.put(key, lookup);
+			}
+		} else {
+			lookup.copyTo(this);
+		}
+
+		model = GraphicsUtil.coerceColorModel(dataModel, cm != null && cm.isAlphaPremultiplied());
+	}
+
+	/**
+	 * Normalizes the fractions, so that the first stop is at 0 and the last stop is
+	 * at 1, and calculates the gradient lookup.
+	 */
+	private void calculateGradient(float[] fractions, Color[] colors) {
 		// We have to deal with the cases where the 1st gradient stop is not
 		// equal to 0 and/or the last gradient stop is not equal to 1.
 		// In both cases, create a new point and replicate the previous
@@ -227,9 +312,6 @@ abstract class MultipleGradientPaintContext implements PaintContext {
 		Color[] hiColors = new Color[len - 1];
 		normalizedIntervals = new float[len - 1];
 
-		gradientUnderflow = colors[0].getRGB();
-		gradientOverflow = colors[colors.length - 1].getRGB();
-
 		int idx = 0;
 		if (fixFirst) {
 			this.fractions[0] = 0;
@@ -263,37 +345,7 @@ abstract class MultipleGradientPaintContext implements PaintContext {
 			this.fractions[idx] = 1;
 		}
 
-		// The inverse transform is needed to from device to user space.
-		// Get all the components of the inverse transform matrix.
-		AffineTransform tInv = t.createInverse();
-
-		double m[] = new double[6];
-		tInv.getMatrix(m);
-		a00 = (float) m[0];
-		a10 = (float) m[1];
-		a01 = (float) m[2];
-		a11 = (float) m[3];
-		a02 = (float) m[4];
-		a12 = (float) m[5];
-
-		// copy some flags
-		this.cycleMethod = cycleMethod;
-		this.colorSpace = colorSpace;
-
-		// PATCH Werner Randelshofer: ColorModel can be null!
-
-		// Setup an example Model, we may refine it later.
-		if (cm != null && cm.getColorSpace() == lrgbmodel_A.getColorSpace()) {
-			dataModel = lrgbmodel_A;
-		} else if (cm == null || cm.getColorSpace() == srgbmodel_A.getColorSpace()) {
-			dataModel = srgbmodel_A;
-		} else {
-			throw new IllegalArgumentException("Unsupported ColorSpace for interpolation");
-		}
-
 		calculateGradientFractions(loColors, hiColors);
-
-		model = GraphicsUtil.coerceColorModel(dataModel, cm != null && cm.isAlphaPremultiplied());
 	}
 
 	/**
@@ -1328,17 +1380,18 @@ abstract class MultipleGradientPaintContext implements PaintContext {
 	protected abstract void fillRaster(int pixels[], int off, int adjust, int x, int y, int w, int h);
 
 	/**
-	 * Took this cacheRaster code from GradientPaint. It appears to recycle rasters
-	 * for use by any other instance, as long as they are sufficiently large.
+	 * Returns a raster which is compatible with the specified color model. Rasters
+	 * are recycled among the instances on the same thread, as long as they are
+	 * sufficiently large.
 	 */
-	protected final static synchronized WritableRaster getCachedRaster(ColorModel cm, int w, int h) {
-		if (cm == cachedModel) {
-			if (cached != null) {
-				WritableRaster ras = (WritableRaster) cached.get();
-				if (ras != null && ras.getWidth() >= w && ras.getHeight() >= h) {
-					cached = null;
-					return ras;
-				}
+	protected final static WritableRaster getCachedRaster(ColorModel cm, int w, int h) {
+		int index = getModelIndex(cm);
+		if (index != -1) {
+			WritableRaster[] rasters = cachedRasters.get();
+			WritableRaster ras = rasters[index];
+			if (ras != null && ras.getWidth() >= w && ras.getHeight() >= h) {
+				rasters[index] = null;
+				return ras;
 			}
 		}
 		// Don't create rediculously small rasters...
@@ -1352,24 +1405,45 @@ abstract class MultipleGradientPaintContext implements PaintContext {
 	}
 
 	/**
-	 * Took this cacheRaster code from GradientPaint. It appears to recycle rasters
-	 * for use by any other instance, as long as they are sufficiently large.
+	 * Puts a raster, which is compatible with the specified color model, back for
+	 * reuse by the current thread. The raster is only kept, if it is larger than
+	 * the raster which is already kept, and if it is not too large.
 	 */
-	protected final static synchronized void putCachedRaster(ColorModel cm, WritableRaster ras) {
-		if (cached != null) {
-			WritableRaster cras = (WritableRaster) cached.get();
-			if (cras != null) {
-				int cw = cras.getWidth();
-				int ch = cras.getHeight();
-				int iw = ras.getWidth();
-				int ih = ras.getHeight();
-				if ((cw >= iw && ch >= ih) || (cw * ch >= iw * ih)) {
-					return;
-				}
+	protected final static void putCachedRaster(ColorModel cm, WritableRaster ras) {
+		int index = getModelIndex(cm);
+		int iw = ras.getWidth();
+		int ih = ras.getHeight();
+		if (index == -1 || iw * ih > MAX_CACHED_RASTER_SIZE) {
+			return;
+		}
+		WritableRaster[] rasters = cachedRasters.get();
+		WritableRaster cras = rasters[index];
+		if (cras != null) {
+			int cw = cras.getWidth();
+			int ch = cras.getHeight();
+			if ((cw >= iw && ch >= ih) || (cw * ch >= iw * ih)) {
+				return;
 			}
 		}
-		cachedModel = cm;
-		cached = new WeakReference(ras);
+		rasters[index] = ras;
+	}
+
+	/**
+	 * Returns the index of a data model in the array of cached rasters, or -1 if
+	 * rasters of the color model are not cached.
+	 */
+	private static int getModelIndex(ColorModel cm) {
+		if (cm == srgbmodel_A) {
+			return 0;
+		} else if (cm == srgbmodel_NA) {
+			return 1;
+		} else if (cm == lrgbmodel_A) {
+			return 2;
+		} else if (cm == lrgbmodel_NA) {
+			return 3;
+		} else {
+			return -1;
+		}
 	}
 
 	/**
@@ -1378,7 +1452,8 @@ abstract class MultipleGradientPaintContext implements PaintContext {
 	@Override
 	public final void dispose() {
 		if (saved != null) {
-			putCachedRaster(model, saved);
+			// The raster has been created for the data model
+			putCachedRaster(dataModel, saved);
 			saved = null;
 		}
 	}
@@ -1390,4 +1465,97 @@ abstract class MultipleGradientPaintContext implements PaintContext {
 	public final ColorModel getColorModel() {
 		return model;
 	}
+
+	/**
+	 * The key of a gradient lookup.
+	 */
+	private static final class LookupKey {
+		private final float[] fractions;
+		private final int[] colors;
+		private final MultipleGradientPaint.CycleMethodEnum cycleMethod;
+		private final MultipleGradientPaint.ColorSpaceEnum colorSpace;
+		private final ColorModel dataModel;
+		private final int hashCode;
+
+		LookupKey(float[] fractions, Color[] colors, MultipleGradientPaint.CycleMethodEnum cycleMethod,
+				MultipleGradientPaint.ColorSpaceEnum colorSpace, ColorModel dataModel) {
+			this.fractions = fractions.clone();
+			this.colors = new int[colors.length];
+			for (int i = 0; i < colors.length; i++) {
+				this.colors[i] = colors[i].getRGB();
+			}
+			this.cycleMethod = cycleMethod;
+			this.colorSpace = colorSpace;
+			this.dataModel = dataModel;
+
+			int h = Arrays.hashCode(this.fractions);
+			h = h * 31 + Arrays.hashCode(this.colors);
+			h = h * 31 + System.identityHashCode(cycleMethod);
+			h = h * 31 + System.identityHashCode(colorSpace);
+			h = h * 31 + System.identityHashCode(dataModel);
+			hashCode = h;
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof LookupKey)) {
+				return false;
+			}
+			LookupKey that = (LookupKey) o;
+			return hashCode == that.hashCode && cycleMethod == that.cycleMethod && colorSpace == that.colorSpace
+					&& dataModel == that.dataModel && Arrays.equals(fractions, that.fractions)
+					&& Arrays.equals(colors, that.colors);
+		}
+	}
+
+	/**
+	 * The gradient lookup, which is computed by calculateGradient(). The arrays
+	 * are shared among instances, and must not be modified.
+	 */
+	private static final class Lookup {
+		private final ColorModel dataModel;
+		private final boolean isSimpleLookup;
+		private final boolean hasDiscontinuity;
+		private final int fastGradientArraySize;
+		private final int[] gradient;
+		private final int[][] gradients;
+		private final int gradientAverage;
+		private final int gradientsLength;
+		private final float[] normalizedIntervals;
+		private final float[] fractions;
+		private final int transparencyTest;
+
+		Lookup(MultipleGradientPaintContext c) {
+			dataModel = c.dataModel;
+			isSimpleLookup = c.isSimpleLookup;
+			hasDiscontinuity = c.hasDiscontinuity;
+			fastGradientArraySize = c.fastGradientArraySize;
+			gradient = c.gradient;
+			gradients = c.gradients;
+			gradientAverage = c.gradientAverage;
+			gradientsLength = c.gradientsLength;
+			normalizedIntervals = c.normalizedIntervals;
+			fractions = c.fractions;
+			transparencyTest = c.transparencyTest;
+		}
+
+		void copyTo(MultipleGradientPaintContext c) {
+			c.dataModel = dataModel;
+			c.isSimpleLookup = isSimpleLookup;
+			c.hasDiscontinuity = hasDiscontinuity;
+			c.fastGradientArraySize = fastGradientArraySize;
+			c.gradient = gradient;
+			c.gradients = gradients;
+			c.gradientAverage = gradientAverage;
+			c.gradientsLength = gradientsLength;
+			c.normalizedIntervals = normalizedIntervals;
+			c.fractions = fractions;
+			c.transparencyTest = transparencyTest;
+		}
+	}
 }
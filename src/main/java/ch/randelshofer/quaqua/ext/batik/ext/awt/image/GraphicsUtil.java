@@ -45,6 +45,7 @@ import java.awt.image.renderable.RenderContext;
 import java.awt.image.renderable.RenderableImage;
 import java.lang.ref.Reference;
 import java.lang.ref.WeakReference;
+import java.util.Arrays;
 
 import ch.randelshofer.quaqua.ext.batik.ext.awt.RenderingHintsKeyExt;
 import ch.randelshofer.quaqua.ext.batik.ext.awt.image.renderable.PaintRable;
@@ -462,8 +463,19 @@ public class GraphicsUtil {
 // BEGIN PATCH W. Randelshofer Performance
 
 	public static void copyData_BYTE_RGBA_INTERLEAVED(Raster src, WritableRaster dst) {
-		DataBufferByte dstDB = (DataBufferByte) dst.getDataBuffer();
-		DataBufferByte srcDB = (DataBufferByte) src.getDataBuffer();
+		if (!(src.getSampleModel() instanceof ComponentSampleModel)
+				|| !(dst.getSampleModel() instanceof ComponentSampleModel)) {
+			copyData_FALLBACK(src, dst);
+			return;
+		}
+		ComponentSampleModel srcCSM = (ComponentSampleModel) src.getSampleModel();
+		ComponentSampleModel dstCSM = (ComponentSampleModel) dst.getSampleModel();
+		if (srcCSM.getPixelStride() != 4 || dstCSM.getPixelStride() != 4
+				|| !Arrays.equals(srcCSM.getBandOffsets(), dstCSM.getBandOffsets())) {
+			copyData_FALLBACK(src, dst);
+			return;
+		}
+
 		int x0 = dst.getMinX();
 		if (x0 < src.getMinX()) {
 			x0 = src.getMinX();
@@ -478,15 +490,44 @@ public class GraphicsUtil {
 		if (x1 > src.getMinX() + src.getWidth() - 1) {
 			x1 = src.getMinX() + src.getWidth() - 1;
 		}
-		/*
-		 * int y1 = dst.getMinY() + dst.getHeight() - 1; if (y1 > src.getMinY() +
-		 * src.getHeight() - 1) { y1 = src.getMinY() + src.getHeight() - 1; }
-		 */
+
+		int y1 = dst.getMinY() + dst.getHeight() - 1;
+		if (y1 > src.getMinY() + src.getHeight() - 1) {
+			y1 = src.getMinY() + src.getHeight() - 1;
+		}
+
 		int width = x1 - x0 + 1;
+		int height = y1 - y0 + 1;
+		if (width <= 0 || height <= 0) {
+			return;
+		}
+
+		DataBufferByte srcDB = (DataBufferByte) src.getDataBuffer();
+		DataBufferByte dstDB = (DataBufferByte) dst.getDataBuffer();
 		byte[] srcPixels = srcDB.getBankData()[0];
 		byte[] dstPixels = dstDB.getBankData()[0];
+		int srcScanStride = srcCSM.getScanlineStride();
+		int dstScanStride = dstCSM.getScanlineStride();
+		// We copy whole pixels, so we start at the lowest band offset
+		int[] bandOffsets = srcCSM.getBandOffsets();
+		int minBandOffset = bandOffsets[0];
+		for (int i = 1; i < bandOffsets.length; i++) {
+			minBandOffset = Math.min(minBandOffset, bandOffsets[i]);
+		}
+		int srcBase = srcDB.getOffset() + (y0 - src.getSampleModelTranslateY()) * srcScanStride
+				+ (x0 - src.getSampleModelTranslateX()) * 4 + minBandOffset;
+		int dstBase = dstDB.getOffset() + (y0 - dst.getSampleModelTranslateY()) * dstScanStride
+				+ (x0 - dst.getSampleModelTranslateX()) * 4 + minBandOffset;
 
-		System.arraycopy(srcPixels, 0, dstPixels, y0 * width * 4, Math.min(srcPixels.length, dstPixels.length));
+		if (srcScanStride == dstScanStride && srcScanStride == width * 4) {
+			System.arraycopy(srcPixels, srcBase, dstPixels, dstBase, width * height * 4);
+		} else {
+			for (int y = 0; y < height; y++) {
+				System.arraycopy(srcPixels, srcBase, dstPixels, dstBase, width * 4);
+				srcBase += srcScanStride;
+				dstBase += dstScanStride;
+			}
+		}
 	}
 // END PATCH W. Randelshofer Performance
 
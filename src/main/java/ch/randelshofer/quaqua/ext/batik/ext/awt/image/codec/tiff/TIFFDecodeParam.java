@@ -86,6 +86,7 @@ public class TIFFDecodeParam implements ImageDecodeParam {
 	private boolean decodePaletteAsShorts = false;
 	private Long ifdOffset = null;
 	private boolean convertJPEGYCbCrToRGB = true;
+	private boolean parallelDecoding = false;
 
 	/** Constructs a default instance of {@code TIFFDecodeParam}. */
 	public TIFFDecodeParam() {
@@ -165,4 +166,21 @@ public class TIFFDecodeParam implements ImageDecodeParam {
 	public boolean getJPEGDecompressYCbCrToRGB() {
 		return convertJPEGYCbCrToRGB;
 	}
+
+	/**
+	 * If set, independent strips or tiles are decoded concurrently, when a large
+	 * region of the image is copied with {@code getData()} or {@code copyData()}.
+	 * Each thread uses decompressors of its own. The default value is
+	 * {@code false}.
+	 */
+	public void setParallelDecoding(boolean parallelDecoding) {
+		this.parallelDecoding = parallelDecoding;
+	}
+
+	/**
+	 * Returns {@code true} if strips or tiles will be decoded concurrently.
+	 */
+	public boolean getParallelDecoding() {
+		return parallelDecoding;
+	}
 }
@@ -36,11 +36,17 @@ import java.awt.image.SampleModel;
 import java.awt.image.WritableRaster;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.zip.DataFormatException;
 import java.util.zip.Inflater;
 
+import ch.randelshofer.quaqua.ext.batik.ext.awt.image.GraphicsUtil;
+import ch.randelshofer.quaqua.ext.batik.ext.awt.image.codec.util.ByteBufferSeekableStream;
 import ch.randelshofer.quaqua.ext.batik.ext.awt.image.codec.util.SeekableStream;
 import ch.randelshofer.quaqua.ext.batik.ext.awt.image.rendered.AbstractRed;
 import ch.randelshofer.quaqua.ext.batik.ext.awt.image.rendered.CachableRed;
@@ -86,6 +92,14 @@ public class TIFFImage extends AbstractRed {
 	private static final int TIFF_JPEG_TABLES = 347;
 	private static final int TIFF_YCBCR_SUBSAMPLING = 530;
 
+	// The minimal number of pixels of a region, which is decoded in parallel
+	private static final int PARALLEL_MIN_PIXELS = 256 * 256;
+
+	// The maximal number of idle inflaters, which are kept for reuse
+	private static final int MAX_POOLED_INFLATERS = 8;
+	// Idle inflaters, which are shared by all images
+	private static final ArrayDeque<Inflater> inflaterPool = new ArrayDeque<Inflater>();
+
 	SeekableStream stream;
 	int tileSize;
 	int tilesX, tilesY;
@@ -96,6 +110,7 @@ public class TIFFImage extends AbstractRed {
 	int compression;
 	/// byte[] palette;
 	int numBands;
+	int samplesPerPixel;
 
 	int chromaSubH;
 	int chromaSubV;
@@ -112,9 +127,6 @@ public class TIFFImage extends AbstractRed {
 	// JPEGDecodeParam decodeParam = null;
 	boolean colorConvertJPEG = false;
 
-	// DEFLATE variables
-	Inflater inflater = null;
-
 	// Endian-ness indicator
 	boolean isBigEndian;
 
@@ -124,6 +136,7 @@ public class TIFFImage extends AbstractRed {
 
 	boolean decodePaletteAsShorts;
 	boolean tiled;
+	boolean parallelDecoding;
 
 	// Decoders
 	private TIFFFaxDecoder decoder = null;
@@ -163,9 +176,9 @@ public class TIFFImage extends AbstractRed {
 	 */
 	/**
 	 * Inflates <code>deflated</code> into <code>inflated</code> using the
-	 * <code>Inflater</code> constructed during class instantiation.
+	 * specified <code>Inflater</code>.
 	 */
-	private final void inflate(byte[] deflated, byte[] inflated) {
+	private static void inflate(Inflater inflater, byte[] deflated, byte[] inflated) {
 		inflater.setInput(deflated);
 		try {
 			inflater.inflate(inflated);
@@ -175,6 +188,33 @@ public class TIFFImage extends AbstractRed {
 		inflater.reset();
 	}
 
+	/**
+	 * Takes an inflater from the pool, or creates a new one if the pool is
+	 * empty.
+	 */
+	private static Inflater acquireInflater() {
+		Inflater inflater;
+		synchronized (inflaterPool) {
+			inflater = inflaterPool.poll();
+		}
+		return (inflater != null) ? inflater : new Inflater();
+	}
+
+	/**
+	 * Returns an inflater to the pool. The inflater is ended, if the pool is
+	 * full.
+	 */
+	private static void releaseInflater(Inflater inflater) {
+		inflater.reset();
+		synchronized (inflaterPool) {
+			if (inflaterPool.size() < MAX_POOLED_INFLATERS) {
+				inflaterPool.push(inflater);
+				return;
+			}
+		}
+		inflater.end();
+	}
+
 	private static SampleModel createPixelInterleavedSampleModel(int dataType, int tileWidth, int tileHeight,
 			int bands) {
 		int[] bandOffsets = new int[bands];
@@ -221,6 +261,7 @@ public class TIFFImage extends AbstractRed {
 		}
 
 		decodePaletteAsShorts = param.getDecodePaletteAsShorts();
+		parallelDecoding = param.getParallelDecoding();
 
 		// Read the specified directory.
 		TIFFDirectory dir = param.getIFDOffset() == null ? new TIFFDirectory(stream, directory)
@@ -229,6 +270,7 @@ public class TIFFImage extends AbstractRed {
 		// Get the number of samples per pixel
 		TIFFField sfield = dir.getField(TIFFImageDecoder.TIFF_SAMPLES_PER_PIXEL);
 		int samplesPerPixel = sfield == null ? 1 : (int) sfield.getAsLong(0);
+		this.samplesPerPixel = samplesPerPixel;
 
 		// Read the TIFF_PLANAR_CONFIGURATION field
 		TIFFField planarConfigurationField = dir.getField(TIFFImageDecoder.TIFF_PLANAR_CONFIGURATION);
@@ -474,10 +516,9 @@ public class TIFFImage extends AbstractRed {
 		switch (compression) {
 		case COMP_NONE:
 		case COMP_PACKBITS:
-			// Do nothing.
-			break;
 		case COMP_DEFLATE:
-			inflater = new Inflater();
+			// Do nothing. Inflaters are taken from the pool, when a tile is
+			// decoded.
 			break;
 		case COMP_FAX_G3_1D:
 		case COMP_FAX_G3_2D:
@@ -742,15 +783,202 @@ public class TIFFImage extends AbstractRed {
 
 	@Override
 	public WritableRaster copyData(WritableRaster wr) {
-		copyToRaster(wr);
+		if (parallelDecoding && (long) wr.getWidth() * wr.getHeight() >= PARALLEL_MIN_PIXELS
+				&& ForkJoinPool.getCommonPoolParallelism() > 1) {
+			copyToRasterParallel(wr);
+		} else {
+			copyToRaster(wr);
+		}
 		return wr;
 	}
 
+	/**
+	 * Decodes the tiles which intersect the raster concurrently, and copies them
+	 * into the raster.
+	 */
+	private void copyToRasterParallel(WritableRaster wr) {
+		int tx0 = Math.max(minTileX, getXTile(wr.getMinX()));
+		int ty0 = Math.max(minTileY, getYTile(wr.getMinY()));
+		int tx1 = Math.min(minTileX + numXTiles - 1, getXTile(wr.getMinX() + wr.getWidth() - 1));
+		int ty1 = Math.min(minTileY + numYTiles - 1, getYTile(wr.getMinY() + wr.getHeight() - 1));
+
+		int count = Math.max(0, tx1 - tx0 + 1) * Math.max(0, ty1 - ty0 + 1);
+		if (count < 2) {
+			copyToRaster(wr);
+			return;
+		}
+		int[] tileXs = new int[count];
+		int[] tileYs = new int[count];
+		for (int y = ty0, i = 0; y <= ty1; y++) {
+			for (int x = tx0; x <= tx1; x++, i++) {
+				tileXs[i] = x;
+				tileYs[i] = y;
+			}
+		}
+		int sliceSize = Math.max(1, count / (4 * ForkJoinPool.getCommonPoolParallelism()));
+		ForkJoinPool.commonPool().invoke(new TileDecodeTask(wr, tileXs, tileYs, 0, count, sliceSize));
+	}
+
+	/**
+	 * Copies a tile into a raster, using the same copy methods as
+	 * {@link #copyToRaster}.
+	 */
+	private void copyTile(Raster tile, WritableRaster wr) {
+		SampleModel sm = getSampleModel();
+		if (GraphicsUtil.is_INT_PACK_Data(sm, false)) {
+			GraphicsUtil.copyData_INT_PACK(tile, wr);
+		} else if (sm instanceof PixelInterleavedSampleModel && sm.getNumBands() == 4
+				&& sm.getDataType() == DataBuffer.TYPE_BYTE) {
+			GraphicsUtil.copyData_BYTE_RGBA_INTERLEAVED(tile, wr);
+		} else {
+			GraphicsUtil.copyData_FALLBACK(tile, wr);
+		}
+	}
+
+	/**
+	 * Decodes a range of tiles, and copies them into a raster. Each leaf task
+	 * uses decompressors of its own, and reads the data of its tiles from the
+	 * shared stream while holding the lock on the image, or from a duplicate of
+	 * the stream, if it is a ByteBufferSeekableStream.
+	 */
+	private class TileDecodeTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final WritableRaster wr;
+		private final int[] tileXs, tileYs;
+		private final int from, to, sliceSize;
+
+		TileDecodeTask(WritableRaster wr, int[] tileXs, int[] tileYs, int from, int to, int sliceSize) {
+			this.wr = wr;
+			this.tileXs = tileXs;
+			this.tileYs = tileYs;
+			this.from = from;
+			this.to = to;
+			this.sliceSize = sliceSize;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > sliceSize) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new TileDecodeTask(wr, tileXs, tileYs, from, mid, sliceSize),
+						new TileDecodeTask(wr, tileXs, tileYs, mid, to, sliceSize));
+				return;
+			}
+
+			Inflater inf = (compression == COMP_DEFLATE) ? acquireInflater() : null;
+			TIFFLZWDecoder lzw = (compression == COMP_LZW) ? new TIFFLZWDecoder(tileWidth, predictor, samplesPerPixel)
+					: null;
+			TIFFFaxDecoder fax = (decoder != null) ? new TIFFFaxDecoder(fillOrder, tileWidth, tileHeight) : null;
+			try {
+				for (int i = from; i < to; i++) {
+					Raster tile = decodeTile(tileXs[i], tileYs[i], readTileData(tileXs[i], tileYs[i]), inf, lzw, fax);
+					copyTile(tile, wr);
+				}
+			} finally {
+				if (inf != null) {
+					releaseInflater(inf);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads the compressed data of tile (tileX, tileY) from the stream, and
+	 * returns a stream which holds only this data at the offset of the tile.
+	 * <p>
+	 * If the image is read from a <code>ByteBufferSeekableStream</code>, the
+	 * data is not copied; a duplicate of the stream is returned instead.
+	 */
+	private SeekableStream readTileData(int tileX, int tileY) {
+		if (stream instanceof ByteBufferSeekableStream) {
+			return ((ByteBufferSeekableStream) stream).duplicate();
+		}
+		int index = tileY * tilesX + tileX;
+		long offset = tileOffsets[index];
+		byte[] data = new byte[(int) tileByteCounts[index]];
+		synchronized (this) {
+			try {
+				long save_offset = stream.getFilePointer();
+				stream.seek(offset);
+				stream.readFully(data, 0, data.length);
+				stream.seek(save_offset);
+			} catch (IOException ioe) {
+				throw new RuntimeException("TIFFImage13");
+			}
+		}
+		return new TileStream(offset, data);
+	}
+
+	/**
+	 * A stream over the data of a single tile, which is located at the offset of
+	 * the tile.
+	 */
+	private static class TileStream extends SeekableStream {
+		private final long offset;
+		private final byte[] data;
+		private int pos;
+
+		TileStream(long offset, byte[] data) {
+			this.offset = offset;
+			this.data = data;
+		}
+
+		@Override
+		public int read() {
+			return (pos >= 0 && pos < data.length) ? data[pos++] & 0xff : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (pos < 0 || pos >= data.length) {
+				return -1;
+			}
+			int n = Math.min(len, data.length - pos);
+			System.arraycopy(data, pos, b, off, n);
+			pos += n;
+			return n;
+		}
+
+		@Override
+		public boolean canSeekBackwards() {
+			return true;
+		}
+
+		@Override
+		public long getFilePointer() {
+			return offset + pos;
+		}
+
+		@Override
+		public void seek(long pos) {
+			this.pos = (int) Math.max(-1, Math.min(Integer.MAX_VALUE, pos - offset));
+		}
+	}
+
 	/**
 	 * Returns tile (tileX, tileY) as a Raster.
 	 */
 	@Override
 	public synchronized Raster getTile(int tileX, int tileY) {
+		if (compression != COMP_DEFLATE) {
+			return decodeTile(tileX, tileY, stream, null, lzwDecoder, decoder);
+		}
+		Inflater inflater = acquireInflater();
+		try {
+			return decodeTile(tileX, tileY, stream, inflater, lzwDecoder, decoder);
+		} finally {
+			releaseInflater(inflater);
+		}
+	}
+
+	/**
+	 * Decodes tile (tileX, tileY) into a new Raster. The tile data is read from
+	 * the specified stream at the offset of the tile, and is decompressed with
+	 * the specified decompressors. Concurrent invocations of this method must use
+	 * streams and decompressors of their own.
+	 */
+	private Raster decodeTile(int tileX, int tileY, SeekableStream stream, Inflater inflater,
+			TIFFLZWDecoder lzwDecoder, TIFFFaxDecoder decoder) {
 		if ((tileX < 0) || (tileX >= tilesX) || (tileY < 0) || (tileY >= tilesY)) {
 			throw new IllegalArgumentException("TIFFImage12");
 		}
@@ -836,7 +1064,7 @@ public class TIFFImage extends AbstractRed {
 					decoder.decodeT6(bdata, data, 0, newRect.height, tiffT6Options);
 				} else if (compression == COMP_DEFLATE) {
 					stream.readFully(data, 0, byteCount);
-					inflate(data, bdata);
+					inflate(inflater, data, bdata);
 				} else if (compression == COMP_NONE) {
 					stream.readFully(bdata, 0, byteCount);
 				}
@@ -890,7 +1118,7 @@ public class TIFFImage extends AbstractRed {
 
 							stream.readFully(data, 0, byteCount);
 							byte[] byteArray = new byte[entries];
-							inflate(data, byteArray);
+							inflate(inflater, data, byteArray);
 							tempData = new short[unitsBeforeLookup];
 							interpretBytesAsShorts(byteArray, tempData, unitsBeforeLookup);
 
@@ -901,7 +1129,7 @@ public class TIFFImage extends AbstractRed {
 							// which will take half the space, so while
 							// allocating we divide byteCount by 2.
 							tempData = new short[byteCount / 2];
-							readShorts(byteCount / 2, tempData);
+							readShorts(stream, byteCount / 2, tempData);
 						}
 
 						stream.seek(save_offset);
@@ -992,12 +1220,12 @@ public class TIFFImage extends AbstractRed {
 
 							stream.readFully(data, 0, byteCount);
 							byte[] byteArray = new byte[unitsInThisTile * 2];
-							inflate(data, byteArray);
+							inflate(inflater, data, byteArray);
 							interpretBytesAsShorts(byteArray, sdata, unitsInThisTile);
 
 						} else if (compression == COMP_NONE) {
 
-							readShorts(byteCount / 2, sdata);
+							readShorts(stream, byteCount / 2, sdata);
 						}
 
 						stream.seek(save_offset);
@@ -1048,7 +1276,7 @@ public class TIFFImage extends AbstractRed {
 
 							stream.readFully(data, 0, byteCount);
 							tempData = new byte[unitsBeforeLookup];
-							inflate(data, tempData);
+							inflate(inflater, data, tempData);
 
 						} else if (compression == COMP_NONE) {
 
@@ -1106,7 +1334,7 @@ public class TIFFImage extends AbstractRed {
 						} else if (compression == COMP_DEFLATE) {
 
 							stream.readFully(data, 0, byteCount);
-							inflate(data, bdata);
+							inflate(inflater, data, bdata);
 
 						} else if (compression == COMP_NONE) {
 
@@ -1151,7 +1379,7 @@ public class TIFFImage extends AbstractRed {
 					} else if (compression == COMP_DEFLATE) {
 
 						tempData = new byte[bytesPostDecoding];
-						inflate(data, tempData);
+						inflate(inflater, data, tempData);
 
 					} else if (compression == COMP_NONE) {
 
@@ -1207,7 +1435,7 @@ public class TIFFImage extends AbstractRed {
 						} else if (compression == COMP_DEFLATE) {
 
 							stream.readFully(data, 0, byteCount);
-							inflate(data, bdata);
+							inflate(inflater, data, bdata);
 
 						} else if (compression == COMP_NONE) {
 
@@ -1246,7 +1474,7 @@ public class TIFFImage extends AbstractRed {
 				} else if (compression == COMP_DEFLATE) {
 
 					stream.readFully(data, 0, byteCount);
-					inflate(data, bdata);
+					inflate(inflater, data, bdata);
 
 				} else {
 
@@ -1284,14 +1512,14 @@ public class TIFFImage extends AbstractRed {
 					} else if (compression == COMP_DEFLATE) {
 
 						stream.readFully(data, 0, byteCount);
-						inflate(data, bdata);
+						inflate(inflater, data, bdata);
 					}
 
 				} else if (sampleSize == 16) {
 
 					if (compression == COMP_NONE) {
 
-						readShorts(byteCount / 2, sdata);
+						readShorts(stream, byteCount / 2, sdata);
 
 					} else if (compression == COMP_LZW) {
 
@@ -1324,14 +1552,14 @@ public class TIFFImage extends AbstractRed {
 
 						stream.readFully(data, 0, byteCount);
 						byte[] byteArray = new byte[unitsInThisTile * 2];
-						inflate(data, byteArray);
+						inflate(inflater, data, byteArray);
 						interpretBytesAsShorts(byteArray, sdata, unitsInThisTile);
 
 					}
 				} else if (sampleSize == 32 && dataType == DataBuffer.TYPE_INT) { // redundant
 					if (compression == COMP_NONE) {
 
-						readInts(byteCount / 4, idata);
+						readInts(stream, byteCount / 4, idata);
 
 					} else if (compression == COMP_LZW) {
 
@@ -1364,7 +1592,7 @@ public class TIFFImage extends AbstractRed {
 
 						stream.readFully(data, 0, byteCount);
 						byte[] byteArray = new byte[unitsInThisTile * 4];
-						inflate(data, byteArray);
+						inflate(inflater, data, byteArray);
 						interpretBytesAsInts(byteArray, idata, unitsInThisTile);
 
 					}
@@ -1521,7 +1749,7 @@ public class TIFFImage extends AbstractRed {
 		return tile;
 	}
 
-	private void readShorts(int shortCount, short[] shortArray) {
+	private void readShorts(SeekableStream stream, int shortCount, short[] shortArray) {
 
 		// Since each short consists of 2 bytes, we need a
 		// byte array of double size
@@ -1537,7 +1765,7 @@ public class TIFFImage extends AbstractRed {
 		interpretBytesAsShorts(byteArray, shortArray, shortCount);
 	}
 
-	private void readInts(int intCount, int[] intArray) {
+	private void readInts(SeekableStream stream, int intCount, int[] intArray) {
 
 		// Since each int consists of 4 bytes, we need a
 		// byte array of quadruple size
@@ -1601,43 +1829,44 @@ public class TIFFImage extends AbstractRed {
 	}
 
 	// Uncompress packbits compressed image data.
-	private byte[] decodePackbits(byte[] data, int arraySize, byte[] dst) {
+	private static byte[] decodePackbits(byte[] data, int arraySize, byte[] dst) {
 
 		if (dst == null) {
 			dst = new byte[arraySize];
 		}
 
 		int srcCount = 0, dstCount = 0;
-		byte repeat, b;
-
-		try {
+		int srcLength = data.length, dstLength = dst.length;
 
-			while (dstCount < arraySize) {
-
-				b = data[srcCount++];
+		while (dstCount < arraySize) {
+			if (srcCount >= srcLength) {
+				throw new RuntimeException("TIFFImage14");
+			}
+			int b = data[srcCount++];
 
-				if (b >= 0 && b <= 127) {
+			if (b >= 0) {
 
-					// literal run packet
-					for (int i = 0; i < (b + 1); i++) {
-						dst[dstCount++] = data[srcCount++];
-					}
-
-				} else if (b <= -1 && b >= -127) {
+				// literal run packet
+				int n = b + 1;
+				if (srcCount + n > srcLength || dstCount + n > dstLength) {
+					throw new RuntimeException("TIFFImage14");
+				}
+				System.arraycopy(data, srcCount, dst, dstCount, n);
+				srcCount += n;
+				dstCount += n;
 
-					// 2 byte encoded run packet
-					repeat = data[srcCount++];
-					for (int i = 0; i < (-b + 1); i++) {
-						dst[dstCount++] = repeat;
-					}
+			} else if (b != -128) {
 
-				} else {
-					// no-op packet. Do nothing
-					srcCount++;
+				// 2 byte encoded run packet
+				int n = -b + 1;
+				if (srcCount >= srcLength || dstCount + n > dstLength) {
+					throw new RuntimeException("TIFFImage14");
 				}
+				Arrays.fill(dst, dstCount, dstCount + n, data[srcCount++]);
+				dstCount += n;
+
 			}
-		} catch (java.lang.ArrayIndexOutOfBoundsException ae) {
-			throw new RuntimeException("TIFFImage14");
+			// else: no-op packet. Do nothing
 		}
 
 		return dst;
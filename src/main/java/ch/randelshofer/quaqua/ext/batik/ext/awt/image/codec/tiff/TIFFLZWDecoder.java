@@ -21,216 +21,188 @@ package ch.randelshofer.quaqua.ext.batik.ext.awt.image.codec.tiff;
 
 /**
  * A class for performing LZW decoding.
+ * <p>
+ * The string table is held in an int array: each entry consists of the code of
+ * its prefix string, and of its last byte. The table is allocated once, and is
+ * reused for all strips which are decoded by an instance. Strings are written by
+ * walking their prefix chain backwards, so that no strings need to be
+ * allocated. The horizontal differencing predictor is applied to each row as
+ * soon as the row has been decoded.
+ * <p>
+ * An instance must not be used by more than one thread at a time.
  *
  * @version $Id: TIFFLZWDecoder.java 498740 2007-01-22 18:35:57Z dvholten $
  */
 public class TIFFLZWDecoder {
+	private static final int TABLE_SIZE = 4096;
+	private static final int CLEAR_CODE = 256;
+	private static final int EOI_CODE = 257;
 
-	byte[][] stringTable;
-	byte[] data = null;
-	byte[] uncompData;
-	int tableIndex, bitsToGet = 9;
-	int bytePointer, bitPointer;
-	int dstIndex;
-	int w, h;
-	int predictor, samplesPerPixel;
-	int nextData = 0;
-	int nextBits = 0;
+	/**
+	 * Holds the code of the prefix string of each table entry in the upper bits,
+	 * and its last byte in the lower 8 bits.
+	 */
+	private final int[] table = new int[TABLE_SIZE];
+	/** The first byte of the string of each table entry. */
+	private final byte[] first = new byte[TABLE_SIZE];
+	/** The length of the string of each table entry. */
+	private final int[] length = new int[TABLE_SIZE];
 
-	int[] andTable = { 511, 1023, 2047, 4095 };
+	private final int w;
+	private final int predictor, samplesPerPixel;
 
 	public TIFFLZWDecoder(int w, int predictor, int samplesPerPixel) {
 		this.w = w;
 		this.predictor = predictor;
 		this.samplesPerPixel = samplesPerPixel;
+
+		for (int i = 0; i < 256; i++) {
+			table[i] = i;
+			first[i] = (byte) i;
+			length[i] = 1;
+		}
 	}
 
 	/**
 	 * Method to decode LZW compressed data.
 	 *
-	 * @param data       The compressed data. For efficiency reasons this array is
-	 *                   stored internally without copying it. Do not change the
-	 *                   array after invoking this method.
+	 * @param data       The compressed data.
 	 * @param uncompData Array to return the uncompressed data in.
 	 * @param h          The number of rows the compressed data contains.
 	 */
 	public byte[] decode(byte[] data, byte[] uncompData, int h) {
 
-		if (data[0] == (byte) 0x00 && data[1] == (byte) 0x01) {
+		if (data.length >= 2 && data[0] == (byte) 0x00 && data[1] == (byte) 0x01) {
 			throw new UnsupportedOperationException("TIFFLZWDecoder0");
 		}
 
-		initializeStringTable();
-
-		this.data = data;
-		this.h = h;
-		this.uncompData = uncompData;
-
-		// Initialize pointers
-		bytePointer = 0;
-		bitPointer = 0;
-		dstIndex = 0;
-
-		nextData = 0;
-		nextBits = 0;
-
-		int code, oldCode = 0;
-		byte[] string;
-
-		while (((code = getNextCode()) != 257) && dstIndex != uncompData.length) {
-
-			if (code == 256) {
-
-				initializeStringTable();
-				code = getNextCode();
-
-				if (code == 257) {
+		final int[] table = this.table;
+		final byte[] first = this.first;
+		final int[] length = this.length;
+		final int dataLength = data.length;
+		final int dstLength = uncompData.length;
+		int bits = 0, bitCount = 0, pos = 0;
+		int codeSize = 9, codeMask = 511;
+		int next = 258;
+		int dst = 0;
+		int oldCode = -1;
+		// Horizontal Differencing Predictor
+		int rowLength = w * samplesPerPixel;
+		int predictorLimit = (predictor == 2) ? Math.min(dstLength, h * rowLength) : 0;
+		int predicted = 0;
+
+		while (dst < dstLength) {
+			// Get the next 9, 10, 11 or 12 bits. If the data ends before the
+			// code is complete, we treat it like an EndOfInformation code.
+			// This makes the decoder robust to cases wherein the
+			// EndOfInformation code has been omitted from a strip.
+			if (bitCount < codeSize) {
+				if (pos >= dataLength) {
 					break;
 				}
-
-				writeString(stringTable[code]);
-				oldCode = code;
-
-			} else {
-
-				if (code < tableIndex) {
-
-					string = stringTable[code];
-
-					writeString(string);
-					addStringToTable(stringTable[oldCode], string[0]);
-					oldCode = code;
-
-				} else {
-
-					string = stringTable[oldCode];
-					string = composeString(string, string[0]);
-					writeString(string);
-					addStringToTable(string);
-					oldCode = code;
+				bits = (bits << 8) | (data[pos++] & 0xff);
+				bitCount += 8;
+				if (bitCount < codeSize) {
+					if (pos >= dataLength) {
+						break;
+					}
+					bits = (bits << 8) | (data[pos++] & 0xff);
+					bitCount += 8;
 				}
-
 			}
+			bitCount -= codeSize;
+			int code = (bits >>> bitCount) & codeMask;
 
-		}
-
-		// Horizontal Differencing Predictor
-		if (predictor == 2) {
-
-			int count;
-			for (int j = 0; j < h; j++) {
-
-				count = samplesPerPixel * (j * w + 1);
-
-				for (int i = samplesPerPixel; i < w * samplesPerPixel; i++) {
+			if (code == EOI_CODE) {
+				break;
+			}
+			if (code == CLEAR_CODE) {
+				next = 258;
+				codeSize = 9;
+				codeMask = 511;
+				oldCode = -1;
+				continue;
+			}
 
-					uncompData[count] += uncompData[count - samplesPerPixel];
-					count++;
+			int stringCode;
+			if (oldCode == -1) {
+				// First code after a clear code
+				if (code >= 256) {
+					break;
 				}
+				stringCode = code;
+			} else if (code < next) {
+				stringCode = code;
+				if (next < TABLE_SIZE) {
+					table[next] = (oldCode << 8) | (first[code] & 0xff);
+					first[next] = first[oldCode];
+					length[next] = length[oldCode] + 1;
+					next++;
+				}
+			} else if (code == next && next < TABLE_SIZE) {
+				// The code is not in the table yet: its string is the string of
+				// the old code followed by the first byte of the old code.
+				table[next] = (oldCode << 8) | (first[oldCode] & 0xff);
+				first[next] = first[oldCode];
+				length[next] = length[oldCode] + 1;
+				stringCode = next++;
+			} else {
+				// Illegal code
+				break;
+			}
+			// TIFF switches to the next code size one code early
+			if (next + 1 == (1 << codeSize) && codeSize < 12) {
+				codeSize++;
+				codeMask = (1 << codeSize) - 1;
+			}
+			oldCode = code;
+
+			// Write the string by walking its prefixes backwards
+			int start = dst;
+			int end = start + length[stringCode];
+			int c = stringCode;
+			int i = end - 1;
+			for (; i >= dstLength; i--) {
+				// Skip the bytes which do not fit into the output array
+				c = table[c] >>> 8;
+			}
+			for (; i >= start; i--) {
+				int entry = table[c];
+				uncompData[i] = (byte) entry;
+				c = entry >>> 8;
+			}
+			dst = Math.min(end, dstLength);
+
+			// Apply the predictor to the decoded rows, while they are still in
+			// the cache
+			if (dst >= predicted + rowLength && predicted < predictorLimit) {
+				int to = Math.min(dst, predictorLimit);
+				to -= (to - predicted) % rowLength;
+				applyPredictor(uncompData, predicted, to, rowLength);
+				predicted = to;
 			}
 		}
-
-		return uncompData;
-	}
-
-	/**
-	 * Initialize the string table.
-	 */
-	public void initializeStringTable() {
-
-		stringTable = new byte[4096][];
-
-		for (int i = 0; i < 256; i++) {
-			stringTable[i] = new byte[1];
-			stringTable[i][0] = (byte) i;
-		}
-
-		tableIndex = 258;
-		bitsToGet = 9;
-	}
-
-	/**
-	 * Write out the string just uncompressed.
-	 */
-	public void writeString(byte[] string) {
-
-		for (int i = 0; i < string.length; i++) {
-			uncompData[dstIndex++] = string[i];
-		}
-	}
-
-	/**
-	 * Add a new string to the string table.
-	 */
-	public void addStringToTable(byte[] oldString, byte newString) {
-		int length = oldString.length;
-		byte[] string = new byte[length + 1];
-		System.arraycopy(oldString, 0, string, 0, length);
-		string[length] = newString;
-
-		// Add this new String to the table
-		stringTable[tableIndex++] = string;
-
-		if (tableIndex == 511) {
-			bitsToGet = 10;
-		} else if (tableIndex == 1023) {
-			bitsToGet = 11;
-		} else if (tableIndex == 2047) {
-			bitsToGet = 12;
+		// Apply the predictor to the remaining rows, including the rows which
+		// have not been filled, if the data ended prematurely
+		if (predicted < predictorLimit) {
+			applyPredictor(uncompData, predicted, predictorLimit, rowLength);
 		}
-	}
-
-	/**
-	 * Add a new string to the string table.
-	 */
-	public void addStringToTable(byte[] string) {
 
-		// Add this new String to the table
-		stringTable[tableIndex++] = string;
-
-		if (tableIndex == 511) {
-			bitsToGet = 10;
-		} else if (tableIndex == 1023) {
-			bitsToGet = 11;
-		} else if (tableIndex == 2047) {
-			bitsToGet = 12;
-		}
+		return uncompData;
 	}
 
 	/**
-	 * Append <code>newString</code> to the end of <code>oldString</code>.
+	 * Applies the horizontal differencing predictor to the specified range of
+	 * bytes. The range must start at the beginning of a row.
 	 */
-	public byte[] composeString(byte[] oldString, byte newString) {
-		int length = oldString.length;
-		byte[] string = new byte[length + 1];
-		System.arraycopy(oldString, 0, string, 0, length);
-		string[length] = newString;
-
-		return string;
-	}
-
-	// Returns the next 9, 10, 11 or 12 bits
-	public int getNextCode() {
-		// Attempt to get the next code. The exception is caught to make
-		// this robust to cases wherein the EndOfInformation code has been
-		// omitted from a strip. Examples of such cases have been observed
-		// in practice.
-		try {
-			nextData = (nextData << 8) | (data[bytePointer++] & 0xff);
-			nextBits += 8;
-
-			if (nextBits < bitsToGet) {
-				nextData = (nextData << 8) | (data[bytePointer++] & 0xff);
-				nextBits += 8;
+	private void applyPredictor(byte[] out, int from, int to, int rowLength) {
+		int spp = samplesPerPixel;
+		for (int row = from; row < to; row += rowLength) {
+			// The first pixel of a row is not predicted
+			int end = Math.min(to, row + rowLength);
+			for (int i = row + spp; i < end; i++) {
+				out[i] += out[i - spp];
 			}
-
-			int code = (nextData >> (nextBits - bitsToGet)) & andTable[bitsToGet - 9];
-			nextBits -= bitsToGet;
-
-			return code;
-		} catch (ArrayIndexOutOfBoundsException e) {
-			// Strip not terminated as expected: return EndOfInformation code.
-			return 257;
 		}
 	}
 }
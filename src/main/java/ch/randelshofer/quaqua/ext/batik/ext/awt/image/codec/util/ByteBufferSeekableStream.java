@@ -0,0 +1,142 @@
+/*
+ * @(#)ByteBufferSeekableStream.java
+ *
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package ch.randelshofer.quaqua.ext.batik.ext.awt.image.codec.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A subclass of <code>SeekableStream</code> which reads from a
+ * <code>java.nio.ByteBuffer</code>.
+ * <p>
+ * Unlike <code>MemoryCacheSeekableStream</code>, this stream does not copy the
+ * data into a cache of its own. The buffer can wrap a byte array, or it can be
+ * a memory mapped file, see {@link #map(File)}. Position 0 of the stream is the
+ * position of the buffer at the time the stream was created. The position and
+ * the limit of the buffer are not changed by the stream.
+ * <p>
+ * A stream must not be used by more than one thread at a time. Use
+ * {@link #duplicate()} to obtain streams which can be read concurrently.
+ *
+ * @version $Id$
+ */
+public class ByteBufferSeekableStream extends SeekableStream {
+
+	/** The data of the stream, position 0 is the start of the stream. */
+	private final ByteBuffer buf;
+
+	/** Position of the first unread byte. */
+	private long pointer;
+
+	/**
+	 * Constructs a stream over the remaining bytes of a buffer.
+	 */
+	public ByteBufferSeekableStream(ByteBuffer buf) {
+		this.buf = buf.slice();
+	}
+
+	/**
+	 * Constructs a stream over a byte array, without copying the array.
+	 */
+	public ByteBufferSeekableStream(byte[] data) {
+		this(ByteBuffer.wrap(data));
+	}
+
+	/**
+	 * Maps a file into memory, and returns a stream over the mapped bytes. The
+	 * file is not read onto the heap.
+	 */
+	public static ByteBufferSeekableStream map(File file) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+			// The mapping stays valid after the channel has been closed.
+			return new ByteBufferSeekableStream(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	/**
+	 * Returns a new stream over the same data, which has its own position. The
+	 * new stream is positioned at the start of the data.
+	 */
+	public ByteBufferSeekableStream duplicate() {
+		return new ByteBufferSeekableStream(buf.duplicate());
+	}
+
+	/** Returns the number of bytes of the stream. */
+	public long length() {
+		return buf.limit();
+	}
+
+	@Override
+	public int read() {
+		if (pointer >= buf.limit()) {
+			return -1;
+		}
+		return buf.get((int) pointer++) & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) {
+		if (b == null) {
+			throw new NullPointerException();
+		}
+		if ((off < 0) || (len < 0) || (off + len > b.length)) {
+			throw new IndexOutOfBoundsException();
+		}
+		if (len == 0) {
+			return 0;
+		}
+		if (pointer >= buf.limit()) {
+			return -1;
+		}
+		int n = (int) Math.min(len, buf.limit() - pointer);
+		buf.position((int) pointer);
+		buf.get(b, off, n);
+		pointer += n;
+		return n;
+	}
+
+	@Override
+	public long skip(long n) {
+		if (n <= 0) {
+			return 0;
+		}
+		long skipped = Math.min(n, Math.max(0, buf.limit() - pointer));
+		pointer += skipped;
+		return skipped;
+	}
+
+	@Override
+	public int available() {
+		return (int) Math.max(0, buf.limit() - pointer);
+	}
+
+	/** Returns <code>true</code>. */
+	@Override
+	public boolean canSeekBackwards() {
+		return true;
+	}
+
+	@Override
+	public long getFilePointer() {
+		return pointer;
+	}
+
+	/**
+	 * Sets the position of the stream. Seeking beyond the end of the data is
+	 * allowed, subsequent reads return -1.
+	 */
+	@Override
+	public void seek(long pos) throws IOException {
+		if (pos < 0) {
+			throw new IOException("Negative seek position " + pos);
+		}
+		pointer = pos;
+	}
+}
@@ -13,6 +13,7 @@ package ch.randelshofer.quaqua.filechooser;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
@@ -175,7 +176,16 @@ public abstract class BasicOSXFileSystemView extends QuaquaFileSystemView {
 	 */
 	@Override
 	public boolean isHiddenFile(File f) {
-		if (OSXFile.isInvisible(f)) {
+		return isHiddenFile(f, null);
+	}
+
+	/**
+	 * Returns whether a file is hidden or not. If the attributes of the file are
+	 * provided, they are used for determining whether it is invisible.
+	 */
+	@Override
+	public boolean isHiddenFile(File f, BasicFileAttributes attrs) {
+		if (OSXFile.isInvisible(f, attrs)) {
 			return true;
 		} else {
 			String name = f.getName();
@@ -297,7 +307,7 @@ public abstract class BasicOSXFileSystemView extends QuaquaFileSystemView {
 		if (OSXFile.canWorkWithAliases()) {
 			return OSXFile.getIcon(f, 16);
 		} else {
-			return target.getSystemIcon(f);
+			return getSharedSystemIcon(f);
 		}
 	}
 }
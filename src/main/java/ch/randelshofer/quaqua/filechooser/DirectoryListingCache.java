@@ -0,0 +1,303 @@
+/*
+ * @(#)DirectoryListingCache.java
+ *
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package ch.randelshofer.quaqua.filechooser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.DosFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A process wide cache of directory listings. A listing holds the names and
+ * the basic attributes of the entries of a directory, as they have been read in
+ * a bulk scan. The cache is shared by all FileSystemTreeModel instances, so that
+ * a new file chooser can show the directories which have been shown before
+ * without reading them again.
+ * <p>
+ * The listings are keyed by the canonical path of the directory. A listing is
+ * only returned, if the modification time of the directory has not changed
+ * since the listing was read. Listings which have been read shortly after the
+ * directory was modified are not cached, because the directory may have been
+ * modified again without changing its modification time, if the file system
+ * has a coarse time resolution.
+ * <p>
+ * The modification time of a directory does not change if one of its entries
+ * is modified. Thus the sizes and modification times of the entries may be
+ * stale. FileSystemTreeModel accepts this like for a listing which it has read
+ * itself: the directory is read again when its time to live has expired, and
+ * modifications are reported while the directory is watched.
+ * <p>
+ * The cache is bounded by the total number of entries of all listings. The
+ * least recently used listings are discarded first.
+ * <p>
+ * This class is thread safe.
+ *
+ * @version $Id$
+ */
+class DirectoryListingCache {
+	/**
+	 * The maximal total number of entries of all cached listings.
+	 */
+	private final static int MAX_ENTRY_COUNT = 100000;
+	/**
+	 * The time in milliseconds that must have passed between the last modification
+	 * of a directory and the time its listing was read, so that the listing can be
+	 * cached.
+	 */
+	private final static long MODIFICATION_TIME_RESOLUTION = 2000;
+
+	/**
+	 * The listing of a directory.
+	 */
+	static class Listing {
+		final long lastModified;
+		final String[] names;
+		final BasicFileAttributes[] attributes;
+
+		Listing(long lastModified, String[] names, BasicFileAttributes[] attributes) {
+			this.lastModified = lastModified;
+			this.names = names;
+			this.attributes = attributes;
+		}
+	}
+
+	/**
+	 * Maps canonical paths to listings, the most recently used last.
+	 */
+	private final static LinkedHashMap<String, Listing> listings = new LinkedHashMap<String, Listing>(16, 0.75f,
+			true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Listing> eldest) {
+			if (entryCount > MAX_ENTRY_COUNT && size() > 1) {
+				entryCount -= eldest.getValue().names.length;
+				return true;
+			}
+			return false;
+		}
+	};
+	/**
+	 * The total number of entries of all cached listings.
+	 */
+	private static int entryCount;
+
+	/**
+	 * Prevent instance creation.
+	 */
+	private DirectoryListingCache() {
+	}
+
+	/**
+	 * Returns the cached listing of a directory.
+	 *
+	 * @param dir          The directory.
+	 * @param lastModified The current modification time of the directory.
+	 * @return The listing, or null if no valid listing is cached.
+	 */
+	public static Listing get(File dir, long lastModified) {
+		String key = getKey(dir);
+		if (key == null || lastModified == 0L) {
+			return null;
+		}
+		synchronized (listings) {
+			Listing listing = listings.get(key);
+			if (listing != null && listing.lastModified != lastModified) {
+				listings.remove(key);
+				entryCount -= listing.names.length;
+				listing = null;
+			}
+			return listing;
+		}
+	}
+
+	/**
+	 * Caches the listing of a directory.
+	 *
+	 * @param dir          The directory.
+	 * @param lastModified The modification time of the directory before it was
+	 *                     read.
+	 * @param readMillis   The time when the directory was read.
+	 * @param names        The names of the entries.
+	 * @param attributes   The attributes of the entries. The attributes must have
+	 *                     been copied with {@link #copyOf}.
+	 */
+	public static void put(File dir, long lastModified, long readMillis, List<String> names,
+			List<BasicFileAttributes> attributes) {
+		if (lastModified == 0L || readMillis - lastModified < MODIFICATION_TIME_RESOLUTION
+				|| names.size() > MAX_ENTRY_COUNT) {
+			return;
+		}
+		// The directory must not have been modified while it was read.
+		if (dir.lastModified() != lastModified) {
+			return;
+		}
+		String key = getKey(dir);
+		if (key == null) {
+			return;
+		}
+		Listing listing = new Listing(lastModified, names.toArray(new String[names.size()]),
+				attributes.toArray(new BasicFileAttributes[attributes.size()]));
+		synchronized (listings) {
+			Listing oldListing = listings.remove(key);
+			if (oldListing != null) {
+				entryCount -= oldListing.names.length;
+			}
+			entryCount += listing.names.length;
+			listings.put(key, listing);
+		}
+	}
+
+	/**
+	 * Removes all listings from the cache.
+	 */
+	public static void clear() {
+		synchronized (listings) {
+			listings.clear();
+			entryCount = 0;
+		}
+	}
+
+	/**
+	 * Returns an immutable copy of the attributes, which does not hold on to file
+	 * system resources. If the attributes are DOS file attributes, the copy is
+	 * too.
+	 */
+	public static BasicFileAttributes copyOf(BasicFileAttributes attrs) {
+		if (attrs instanceof DosFileAttributes) {
+			return new CachedDosFileAttributes((DosFileAttributes) attrs);
+		} else {
+			return new CachedFileAttributes(attrs);
+		}
+	}
+
+	private static String getKey(File dir) {
+		try {
+			return dir.getCanonicalPath();
+		} catch (IOException | SecurityException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * A copy of basic file attributes. The times are stored with a resolution of
+	 * milliseconds, to keep the copy small.
+	 */
+	private static class CachedFileAttributes implements BasicFileAttributes {
+		private final long lastModifiedMillis;
+		private final long lastAccessMillis;
+		private final long creationMillis;
+		private final long size;
+		/**
+		 * 0 = other, 1 = regular file, 2 = directory, 3 = symbolic link.
+		 */
+		private final int type;
+
+		CachedFileAttributes(BasicFileAttributes attrs) {
+			lastModifiedMillis = attrs.lastModifiedTime().toMillis();
+			lastAccessMillis = attrs.lastAccessTime().toMillis();
+			creationMillis = attrs.creationTime().toMillis();
+			size = attrs.size();
+			if (attrs.isRegularFile()) {
+				type = 1;
+			} else if (attrs.isDirectory()) {
+				type = 2;
+			} else if (attrs.isSymbolicLink()) {
+				type = 3;
+			} else {
+				type = 0;
+			}
+		}
+
+		@Override
+		public FileTime lastModifiedTime() {
+			return FileTime.fromMillis(lastModifiedMillis);
+		}
+
+		@Override
+		public FileTime lastAccessTime() {
+			return FileTime.fromMillis(lastAccessMillis);
+		}
+
+		@Override
+		public FileTime creationTime() {
+			return FileTime.fromMillis(creationMillis);
+		}
+
+		@Override
+		public boolean isRegularFile() {
+			return type == 1;
+		}
+
+		@Override
+		public boolean isDirectory() {
+			return type == 2;
+		}
+
+		@Override
+		public boolean isSymbolicLink() {
+			return type == 3;
+		}
+
+		@Override
+		public boolean isOther() {
+			return type == 0;
+		}
+
+		@Override
+		public long size() {
+			return size;
+		}
+
+		@Override
+		public Object fileKey() {
+			return null;
+		}
+	}
+
+	/**
+	 * A copy of DOS file attributes.
+	 */
+	private static class CachedDosFileAttributes extends CachedFileAttributes implements DosFileAttributes {
+		private final boolean isReadOnly;
+		private final boolean isHidden;
+		private final boolean isArchive;
+		private final boolean isSystem;
+
+		CachedDosFileAttributes(DosFileAttributes attrs) {
+			super(attrs);
+			isReadOnly = attrs.isReadOnly();
+			isHidden = attrs.isHidden();
+			isArchive = attrs.isArchive();
+			isSystem = attrs.isSystem();
+		}
+
+		@Override
+		public boolean isReadOnly() {
+			return isReadOnly;
+		}
+
+		@Override
+		public boolean isHidden() {
+			return isHidden;
+		}
+
+		@Override
+		public boolean isArchive() {
+			return isArchive;
+		}
+
+		@Override
+		public boolean isSystem() {
+			return isSystem;
+		}
+	}
+}
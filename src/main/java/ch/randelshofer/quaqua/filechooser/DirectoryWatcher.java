@@ -0,0 +1,213 @@
+/*
+ * @(#)DirectoryWatcher.java
+ *
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package ch.randelshofer.quaqua.filechooser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.InvalidPathException;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Watches directories for created, deleted and modified entries with a
+ * java.nio.file.WatchService. The events of a directory are passed to the
+ * listeners of the directory on the watcher thread.
+ * <p>
+ * Instances can only be created, if the file system supports watching
+ * directories natively. A WatchService which polls the directories is not
+ * used, because it does not perform better than re-reading the directories.
+ *
+ * @version $Id$
+ */
+class DirectoryWatcher {
+
+	/**
+	 * The listener interface for receiving the events of a watched directory.
+	 */
+	interface Listener {
+		/**
+		 * Invoked on the watcher thread, when entries of the directory have been
+		 * created, deleted or modified.
+		 *
+		 * @param dir     The watched directory.
+		 * @param events  The events. The events may include an OVERFLOW event, if
+		 *                events have been lost.
+		 * @param isValid False, if the directory can not be watched anymore, for
+		 *                example because it has been deleted.
+		 */
+		void directoryChanged(File dir, List<WatchEvent<?>> events, boolean isValid);
+	}
+
+	/**
+	 * A watched directory.
+	 */
+	private static class Entry {
+		final File dir;
+		final ArrayList<Listener> listeners = new ArrayList<>();
+
+		Entry(File dir) {
+			this.dir = dir;
+		}
+	}
+
+	private final WatchService watchService;
+	/**
+	 * Maps watch keys to watched directories. Access to this map must be
+	 * synchronized.
+	 */
+	private final HashMap<WatchKey, Entry> entries = new HashMap<>();
+	private Thread watcherThread;
+
+	private DirectoryWatcher(WatchService watchService) {
+		this.watchService = watchService;
+	}
+
+	/**
+	 * Creates a new directory watcher for the default file system.
+	 *
+	 * @return The directory watcher, or null if the default file system does not
+	 *         support watching directories natively.
+	 */
+	public static DirectoryWatcher create() {
+		WatchService watchService;
+		try {
+			watchService = FileSystems.getDefault().newWatchService();
+		} catch (IOException | UnsupportedOperationException | SecurityException e) {
+			return null;
+		}
+		if (watchService.getClass().getName().equals("sun.nio.fs.PollingWatchService")) {
+			try {
+				watchService.close();
+			} catch (IOException e) {
+				// We don't care
+			}
+			return null;
+		}
+		return new DirectoryWatcher(watchService);
+	}
+
+	/**
+	 * Starts watching the specified directory.
+	 *
+	 * @param dir      The directory.
+	 * @param listener The listener which receives the events of the directory.
+	 * @return The watch key, or null if the directory can not be watched.
+	 */
+	public WatchKey register(File dir, Listener listener) {
+		WatchKey key;
+		try {
+			key = dir.toPath().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+					StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+		} catch (IOException | InvalidPathException | UnsupportedOperationException | SecurityException
+				| ClosedWatchServiceException e) {
+			return null;
+		}
+		synchronized (entries) {
+			// Registering a directory twice yields the same key
+			Entry entry = entries.get(key);
+			if (entry == null) {
+				entry = new Entry(dir);
+				entries.put(key, entry);
+			}
+			entry.listeners.add(listener);
+			startWatcher();
+		}
+		return key;
+	}
+
+	/**
+	 * Stops delivering the events of the directory with the specified key to the
+	 * listener. The directory is not watched anymore, if it has no listeners left.
+	 */
+	public void cancel(WatchKey key, Listener listener) {
+		synchronized (entries) {
+			Entry entry = entries.get(key);
+			if (entry != null) {
+				entry.listeners.remove(listener);
+				if (entry.listeners.isEmpty()) {
+					entries.remove(key);
+					key.cancel();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Stops watching all directories, and releases the resources of the watcher.
+	 */
+	public void close() {
+		synchronized (entries) {
+			entries.clear();
+		}
+		try {
+			watchService.close();
+		} catch (IOException e) {
+			// We don't care
+		}
+	}
+
+	/**
+	 * This method must be called while holding the lock on the entries.
+	 */
+	private void startWatcher() {
+		if (watcherThread == null) {
+			watcherThread = new Thread(this + " Watcher") {
+				@Override
+				public void run() {
+					processEvents();
+				}
+			};
+			try {
+				watcherThread.setDaemon(true);
+			} catch (SecurityException e) {
+			}
+			watcherThread.start();
+		}
+	}
+
+	/**
+	 * Takes the signalled keys from the watch service, and passes their events to
+	 * the listeners until the watcher is closed.
+	 */
+	private void processEvents() {
+		while (true) {
+			WatchKey key;
+			try {
+				key = watchService.take();
+			} catch (InterruptedException | ClosedWatchServiceException e) {
+				return;
+			}
+			List<WatchEvent<?>> events = key.pollEvents();
+			boolean isValid = key.reset();
+
+			File dir;
+			Listener[] listeners;
+			synchronized (entries) {
+				Entry entry = isValid ? entries.get(key) : entries.remove(key);
+				if (entry == null) {
+					continue;
+				}
+				dir = entry.dir;
+				listeners = entry.listeners.toArray(new Listener[entry.listeners.size()]);
+			}
+			for (Listener listener : listeners) {
+				try {
+					listener.directoryChanged(dir, events, isValid);
+				} catch (Throwable e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+}
@@ -13,16 +13,32 @@ package ch.randelshofer.quaqua.filechooser;
 
 import java.awt.IllegalComponentStateException;
 import java.io.File;
+import java.io.IOException;
 import java.io.Serializable;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.text.CollationKey;
 import java.text.Collator;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.EnumSet;
 import java.util.Enumeration;
-import java.util.Iterator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import javax.swing.Icon;
 import javax.swing.JFileChooser;
@@ -43,6 +59,7 @@ import ch.randelshofer.quaqua.osx.OSXFile;
 import ch.randelshofer.quaqua.util.ArrayUtil;
 import ch.randelshofer.quaqua.util.ConcurrentDispatcher;
 import ch.randelshofer.quaqua.util.IteratorEnumeration;
+import ch.randelshofer.quaqua.util.RankedDispatcher;
 import ch.randelshofer.quaqua.util.SequentialDispatcher;
 import ch.randelshofer.quaqua.util.Worker;
 
@@ -72,6 +89,16 @@ public class FileSystemTreeModel implements TreeModel {
 	public final static int VALID = 2;
 	/** We store all our listeners here. */
 	protected EventListenerList listenerList = new EventListenerList();
+	/**
+	 * Holds the changed nodes for which no event has been fired yet, grouped by
+	 * their parent. This is only accessed on the AWT event dispatcher thread.
+	 */
+	private LinkedHashMap<Node, HashSet<Node>> changedNodes = new LinkedHashMap<>();
+	/**
+	 * This is set to true, when the delivery of the changed nodes has been
+	 * scheduled.
+	 */
+	private boolean isChangeFlushPending;
 	/**
 	 * We need a JFileChooser to determine the user presentable (localized) name of
 	 * a file.
@@ -103,15 +130,114 @@ public class FileSystemTreeModel implements TreeModel {
 	 * If this variable is true, file labels are resolved.
 	 */
 	private boolean isResolveFileLabels = true;
+	/**
+	 * If this variable is true, directories are read together with the basic
+	 * attributes of their entries in a single pass. The type, the hidden state, the
+	 * length and the modification time of each entry are then taken from this
+	 * attribute read, instead of probing the file system for each of them
+	 * separately. Bulk scanning is only done if native code is not available,
+	 * because the native item info flags provide more than the basic attributes.
+	 */
+	private boolean isBulkScan = true;
+	/**
+	 * If this variable is true, the children of an empty directory node are
+	 * published in sorted chunks while the directory is being read, instead of
+	 * publishing them all at once when the whole directory has been read.
+	 */
+	private boolean isStreamingValidation = true;
+	/**
+	 * The number of fresh nodes in the first chunk that is published while the
+	 * directory is being read. Each following chunk must hold at least as many
+	 * nodes as have been published before, because the AWT thread merges each
+	 * chunk with all published nodes. Thus the total merge work stays linear.
+	 */
+	private final static int STREAMING_CHUNK_SIZE = 500;
+	/**
+	 * The time in milliseconds after which the first chunk is published, even if
+	 * it is not full yet. The time is doubled after each chunk.
+	 */
+	private final static long STREAMING_CHUNK_MILLIS = 50;
+	/**
+	 * If this variable is true, the file types of the fresh files of large
+	 * directories are read, and the fresh nodes are sorted by multiple threads.
+	 * The file chooser is only called by the validator thread, because file views
+	 * and file system views are not thread safe.
+	 */
+	private boolean isParallelValidation = true;
+	/**
+	 * The minimal number of entries a directory must have, so that its fresh
+	 * files are read and its fresh nodes are sorted by multiple threads. Smaller directories are
+	 * processed by a single thread, because splitting up the work costs more than
+	 * it gains.
+	 */
+	private final static int PARALLEL_THRESHOLD = 2000;
+	/**
+	 * The number of entries processed by a single parallel task.
+	 */
+	private final static int PARALLEL_SLICE_SIZE = 256;
+	/**
+	 * If this variable is true, directories which are validated for the first time
+	 * are populated from the process wide DirectoryListingCache, and bulk scanned
+	 * directories are put into the cache. A cached listing is trusted like a fresh
+	 * one. It is read again when its time to live has expired, and changes are
+	 * picked up by watching the directory.
+	 */
+	private boolean isListingCache = true;
+	/**
+	 * If this variable is true, the directories in the tree are watched for
+	 * changes, instead of being read again when their time to live has expired.
+	 */
+	private boolean isWatchingDirectories = true;
+	/**
+	 * The directory watcher. This is null if no directory has been watched yet,
+	 * or if watching directories is not supported.
+	 */
+	private DirectoryWatcher directoryWatcher;
+	/**
+	 * This is set to true, if the file system does not support watching
+	 * directories.
+	 */
+	private boolean isDirectoryWatchingUnsupported;
+	/**
+	 * The maximal number of directories which are watched at the same time.
+	 */
+	private final static int MAX_WATCHED_DIRECTORIES = 64;
+	/**
+	 * The maximal number of events of a directory which are applied to its
+	 * children one by one. If there are more events, the directory is read again.
+	 */
+	private final static int MAX_WATCH_EVENTS = 256;
+	/**
+	 * The watched directory nodes, the most recently used last. If there are too
+	 * many of them, the least recently used node is not watched anymore, and
+	 * falls back to being read again when its time to live has expired. This is
+	 * only accessed on the AWT event dispatcher thread.
+	 */
+	private final LinkedHashMap<DirectoryNode, WatchKey> watchedNodes = new LinkedHashMap<DirectoryNode, WatchKey>(16,
+			0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<DirectoryNode, WatchKey> eldest) {
+			if (size() > MAX_WATCHED_DIRECTORIES) {
+				eldest.getKey().unwatch(false);
+				return true;
+			}
+			return false;
+		}
+	};
 	/**
 	 * The collator used for sorting files. Note: We use a static variable here,
 	 * because creating a collator is very expensive.
 	 */
 	private static Collator collator;
 	/**
-	 * Dispatcher for the validation of file infos.
+	 * Dispatcher for the validation of file infos. The infos of the nodes which
+	 * have been requested most recently are validated first. Since the cell
+	 * renderers request the infos of the nodes they paint, these are the nodes
+	 * which are currently visible.
 	 */
-	private SequentialDispatcher fileInfoDispatcher;
+	private RankedDispatcher fileInfoDispatcher;
 	/**
 	 * Dispatcher for the validation of directory listings.
 	 */
@@ -141,8 +267,7 @@ public class FileSystemTreeModel implements TreeModel {
 		}
 		root = new RootNode(rootFile);
 
-		fileInfoDispatcher = new SequentialDispatcher();
-		// fileInfoDispatcher.setLIFO(true);
+		fileInfoDispatcher = new RankedDispatcher();
 		directoryDispatcher = new ConcurrentDispatcher();
 		aliasResolutionDispatcher = new SequentialDispatcher();
 
@@ -158,6 +283,15 @@ public class FileSystemTreeModel implements TreeModel {
 		fileInfoDispatcher.start();
 	}
 
+	/**
+	 * Dispatches the info validation of the specified node. If a validation of the
+	 * node is already pending, it is ranked to be done first.
+	 */
+	protected void dispatchInfoValidation(Node node, Runnable r) {
+		fileInfoDispatcher.dispatch(node, r);
+		fileInfoDispatcher.start();
+	}
+
 	public void dispatchAliasResolution(Runnable r) {
 		aliasResolutionDispatcher.dispatch(r);
 	}
@@ -181,6 +315,16 @@ public class FileSystemTreeModel implements TreeModel {
 		clear();
 	}
 
+	/**
+	 * Stops watching all directories.
+	 */
+	private void unwatchAll() {
+		DirectoryNode[] nodes = watchedNodes.keySet().toArray(new DirectoryNode[watchedNodes.size()]);
+		for (DirectoryNode node : nodes) {
+			node.unwatch(true);
+		}
+	}
+
 	public Node getPrototypeValue() {
 		return new Node(new File(QuaquaManager.getProperty("user.home")), "Prototype", false);
 	}
@@ -518,6 +662,95 @@ public class FileSystemTreeModel implements TreeModel {
 		return isResolveFileLabels;
 	}
 
+	/**
+	 * Sets whether directories are read together with the basic attributes of
+	 * their entries in a single pass.
+	 */
+	public void setBulkScan(boolean newValue) {
+		if (isBulkScan != newValue) {
+			isBulkScan = newValue;
+			invalidateAll();
+		}
+	}
+
+	/**
+	 * Returns true, if directories are read together with the basic attributes of
+	 * their entries in a single pass.
+	 */
+	public boolean isBulkScan() {
+		return isBulkScan && !OSXFile.canWorkWithAliases();
+	}
+
+	/**
+	 * Sets whether the children of an empty directory node are published in sorted
+	 * chunks while the directory is being read.
+	 */
+	public void setStreamingValidation(boolean newValue) {
+		isStreamingValidation = newValue;
+	}
+
+	/**
+	 * Returns true, if the children of an empty directory node are published in
+	 * sorted chunks while the directory is being read.
+	 */
+	public boolean isStreamingValidation() {
+		return isStreamingValidation;
+	}
+
+	/**
+	 * Sets whether the fresh nodes of large directories are created and sorted by
+	 * multiple threads.
+	 */
+	public void setParallelValidation(boolean newValue) {
+		isParallelValidation = newValue;
+	}
+
+	/**
+	 * Returns true, if the fresh nodes of large directories are created and sorted
+	 * by multiple threads.
+	 */
+	public boolean isParallelValidation() {
+		return isParallelValidation;
+	}
+
+	/**
+	 * Sets whether directories which are validated for the first time are
+	 * populated from the listings which have been read by other instances of
+	 * FileSystemTreeModel. A directory which has been populated from a cached
+	 * listing is read again immediately.
+	 */
+	public void setListingCache(boolean newValue) {
+		isListingCache = newValue;
+	}
+
+	/**
+	 * Returns true, if directories which are validated for the first time are
+	 * populated from the listings which have been read by other instances of
+	 * FileSystemTreeModel.
+	 */
+	public boolean isListingCache() {
+		return isListingCache;
+	}
+
+	/**
+	 * Sets whether the directories in the tree are watched for changes. If the
+	 * file system does not support this, the directories are read again when their
+	 * time to live has expired.
+	 */
+	public void setWatchingDirectories(boolean newValue) {
+		isWatchingDirectories = newValue;
+		if (!newValue) {
+			unwatchAll();
+		}
+	}
+
+	/**
+	 * Returns true, if the directories in the tree are watched for changes.
+	 */
+	public boolean isWatchingDirectories() {
+		return isWatchingDirectories;
+	}
+
 	/**
 	 * Invalidates the provided path. This should be used to invalidateChildren the
 	 * tree model when there are significant changes in the JFileChooser. Such as
@@ -549,12 +782,21 @@ public class FileSystemTreeModel implements TreeModel {
 	/**
 	 * Stalls validation. This should be used to stop validation of the tree model
 	 * when it is no longer needed.
+	 * <p>
+	 * This also stops watching the directories, and closes the directory watcher,
+	 * so that its thread does not keep the tree model alive. The directories are
+	 * watched again, when they are validated again.
 	 */
 	public void stopValidation() {
 		root.stopValidationSubtree();
 		aliasResolutionDispatcher.stop();
 		fileInfoDispatcher.stop();
 		directoryDispatcher.stop();
+		unwatchAll();
+		if (directoryWatcher != null) {
+			directoryWatcher.close();
+			directoryWatcher = null;
+		}
 	}
 
 	/**
@@ -627,8 +869,15 @@ public class FileSystemTreeModel implements TreeModel {
 
 	/**
 	 * Notifies all listeners that have registered interest for notification on this
-	 * event type. The event instance is lazily created using the parameters passed
-	 * into the fire method.
+	 * event type.
+	 * <p>
+	 * The notification is coalesced with the notifications for the other changed
+	 * children of the same parent, and delivered with a single event at the end of
+	 * the current AWT event. The child indices are determined when the event is
+	 * delivered, so they are consistent with the insertions and removals that have
+	 * been delivered in the mean time.
+	 * <p>
+	 * This method must be called on the AWT event dispatcher thread.
 	 *
 	 * @param node the node being changed
 	 * @see EventListenerList
@@ -636,7 +885,70 @@ public class FileSystemTreeModel implements TreeModel {
 	protected void fireTreeNodeChanged(FileSystemTreeModel.Node node) {
 		FileSystemTreeModel.Node parent = (FileSystemTreeModel.Node) node.getParent();
 		if (parent != null) {
-			fireTreeNodesChanged(this, parent.getPath(), new int[] { parent.getIndex(node) }, new Object[] { node });
+			HashSet<Node> changed = changedNodes.get(parent);
+			if (changed == null) {
+				changed = new HashSet<>();
+				changedNodes.put(parent, changed);
+			}
+			changed.add(node);
+			if (!isChangeFlushPending) {
+				isChangeFlushPending = true;
+				SwingUtilities.invokeLater(new Runnable() {
+					@Override
+					public void run() {
+						flushNodesChanged();
+					}
+				});
+			}
+		}
+	}
+
+	/**
+	 * Delivers the coalesced notifications for changed nodes. For each parent, a
+	 * single event with ascending child indices is fired. Nodes which are no longer
+	 * children of the parent, and parents which are no longer part of the tree, are
+	 * skipped.
+	 */
+	private void flushNodesChanged() {
+		isChangeFlushPending = false;
+		if (changedNodes.isEmpty()) {
+			return;
+		}
+		LinkedHashMap<Node, HashSet<Node>> flushed = changedNodes;
+		changedNodes = new LinkedHashMap<>();
+
+		for (Map.Entry<Node, HashSet<Node>> entry : flushed.entrySet()) {
+			Node parent = entry.getKey();
+			HashSet<Node> changed = entry.getValue();
+			if (parent.getRoot() != getRoot() || !(parent instanceof DirectoryNode)) {
+				continue;
+			}
+			ArrayList siblings = ((DirectoryNode) parent).children;
+			if (siblings == null) {
+				continue;
+			}
+
+			// A single pass over the children yields the indices in ascending order.
+			int[] childIndices = new int[changed.size()];
+			Object[] children = new Object[changed.size()];
+			int count = 0;
+			for (int i = 0, n = siblings.size(); i < n && count < childIndices.length; i++) {
+				Object child = siblings.get(i);
+				if (changed.contains(child)) {
+					childIndices[count] = i;
+					children[count] = child;
+					count++;
+				}
+			}
+			if (count > 0) {
+				if (count < childIndices.length) {
+					childIndices = ArrayUtil.truncate(childIndices, 0, count);
+					Object[] truncated = new Object[count];
+					System.arraycopy(children, 0, truncated, 0, count);
+					children = truncated;
+				}
+				fireTreeNodesChanged(this, parent.getPath(), childIndices, children);
+			}
 		}
 	}
 
@@ -849,6 +1161,21 @@ public class FileSystemTreeModel implements TreeModel {
 		 * determined due to the lack of native support.
 		 */
 		protected String[] tagNames;
+		/**
+		 * Holds the length of the file as read by a bulk scan of the parent directory.
+		 * The value is only valid, if hasAttributes is true.
+		 */
+		protected long fileLength;
+		/**
+		 * Holds the modification time of the file as read by a bulk scan of the parent
+		 * directory. The value is only valid, if hasAttributes is true.
+		 */
+		protected long lastModified;
+		/**
+		 * This is set to true, if fileLength and lastModified have been read by a bulk
+		 * scan of the parent directory.
+		 */
+		protected boolean hasAttributes;
 
 		public Node(File f, boolean isHidden) {
 			// this(f, fileChooser.getName(f));
@@ -877,13 +1204,48 @@ public class FileSystemTreeModel implements TreeModel {
 
 		@Override
 		public long getFileLength() {
-			if (lazyGetResolvedFile() == null) {
+			if (hasAttributes) {
+				return fileLength;
+			} else if (lazyGetResolvedFile() == null) {
 				return -1L;
 			} else {
 				return (getResolvedFile().isDirectory()) ? -1l : file.length();
 			}
 		}
 
+		/**
+		 * Returns the time the file was last modified in milliseconds since the epoch.
+		 * Returns 0 if the time could not be determined.
+		 */
+		public long getLastModified() {
+			if (hasAttributes) {
+				return lastModified;
+			} else {
+				File f = lazyGetResolvedFile();
+				return (f == null) ? 0L : f.lastModified();
+			}
+		}
+
+		/**
+		 * Caches the length and the modification time of the file from the provided
+		 * attributes, so that they do not have to be read from the file system again.
+		 */
+		protected void setAttributes(BasicFileAttributes attrs) {
+			fileLength = attrs.isDirectory() ? -1L : attrs.size();
+			lastModified = attrs.lastModifiedTime().toMillis();
+			hasAttributes = true;
+		}
+
+		/**
+		 * Takes over the cached attributes of a freshly scanned node which denotes the
+		 * same file as this node.
+		 */
+		protected void updateAttributes(Node freshNode) {
+			fileLength = freshNode.fileLength;
+			lastModified = freshNode.lastModified;
+			hasAttributes = freshNode.hasAttributes;
+		}
+
 		@Override
 		public String getUserName() {
 			if (userName == null) {
@@ -1011,20 +1373,34 @@ public class FileSystemTreeModel implements TreeModel {
 		}
 
 		/**
-		 * Updates values, that may change in a file.
+		 * Updates values, that may change in a file. If the validation is already
+		 * pending, it is ranked to be done before the validations of nodes which have
+		 * not been requested since.
 		 */
 		public final void validateInfo() {
-			if (infoState == INVALID) {
+			if (infoState == VALIDATING) {
+				fileInfoDispatcher.rerank(this);
+			} else if (infoState == INVALID) {
 				infoState = VALIDATING;
 
 				if (isMonitoringInfoValidation(file)) {
 					System.out.println("Starting info validation for " + file);
 				}
 
-				dispatchFileUpdater(new Worker<Boolean>() {
+				dispatchInfoValidation(this, new Worker<Boolean>() {
+					/**
+					 * This is set to true, if the node has left the tree before the
+					 * validation started.
+					 */
+					private boolean isDropped;
 
 					@Override
 					public Boolean construct() {
+						// Drop the work, if the node is no longer part of the tree.
+						if (Node.this.getRoot() != FileSystemTreeModel.this.getRoot()) {
+							isDropped = true;
+							return Boolean.FALSE;
+						}
 						if (!doItFast) {
 							Icon oldIcon = icon;
 							int oldFileLabel = fileLabel;
@@ -1065,7 +1441,13 @@ public class FileSystemTreeModel implements TreeModel {
 
 					@Override
 					protected void finished() {
-						validationHasCompleted();
+						if (isDropped) {
+							// Let the node validate again, if it is put back into
+							// the tree.
+							infoState = INVALID;
+						} else {
+							validationHasCompleted();
+						}
 					}
 				});
 			}
@@ -1278,9 +1660,11 @@ public class FileSystemTreeModel implements TreeModel {
 		 */
 		/* private */ int childrenState;
 		/**
-		 * The children.
+		 * The children. The list is never changed once it has been assigned to this
+		 * variable, so that the validator can merge the fresh nodes with the
+		 * children on a worker thread. Changes are made on a copy of the list.
 		 */
-		private ArrayList children;
+		private volatile ArrayList children;
 		/**
 		 * The current validator.
 		 */
@@ -1290,6 +1674,63 @@ public class FileSystemTreeModel implements TreeModel {
 		private Boolean isTraversable;
 
 		private class DirectoryValidator implements Runnable {
+			/**
+			 * The fresh nodes created in phase 1.
+			 */
+			private ArrayList<Node> freshNodeList;
+			/**
+			 * The fresh nodes which have not been published yet. This is null if the
+			 * fresh nodes are not published incrementally.
+			 */
+			private ArrayList<Node> chunk;
+			/**
+			 * The time when the last chunk was published.
+			 */
+			private long chunkTimeMillis;
+			/**
+			 * The number of nodes, at which the current chunk is published.
+			 */
+			private int chunkSize = STREAMING_CHUNK_SIZE;
+			/**
+			 * The time after which the current chunk is published, even if it has
+			 * less nodes than chunkSize.
+			 */
+			private long chunkMillis = STREAMING_CHUNK_MILLIS;
+			/**
+			 * The number of nodes which have been published.
+			 */
+			private int publishedCount;
+			/**
+			 * The published nodes which have not been inserted by the AWT thread yet.
+			 */
+			private final ArrayList<Node> publishedNodes = new ArrayList<>();
+			/**
+			 * This is set to true, while the AWT thread has a pending insertion of
+			 * published nodes.
+			 */
+			private boolean isPublishPending;
+			private boolean isFileHidingEnabled;
+			private QuaquaFileSystemView fsv;
+			/**
+			 * Whether the fresh nodes may be created from a cached listing.
+			 */
+			private final boolean isCacheAllowed;
+
+			/**
+			 * Creates a new validator.
+			 *
+			 * @param isStreaming    Set this to true, if the fresh nodes shall be
+			 *                       published in sorted chunks while the directory is
+			 *                       being read.
+			 * @param isCacheAllowed Set this to true, if the fresh nodes may be created
+			 *                       from a cached listing.
+			 */
+			public DirectoryValidator(boolean isStreaming, boolean isCacheAllowed) {
+				if (isStreaming) {
+					chunk = new ArrayList<>();
+				}
+				this.isCacheAllowed = isCacheAllowed;
+			}
 
 			/**
 			 * This method is called by a worker thread. It reads the directory represented
@@ -1335,96 +1776,95 @@ public class FileSystemTreeModel implements TreeModel {
 				// (instance variable "children").
 
 				// Step 1.1 Fetch fresh files
-				final File[] freshFiles;
-				if (exists && isTraversable()) {
-					freshFiles = getFiles();
-				} else {
-					freshFiles = new File[0];
-				}
-				if (this != validator) {
-					return;
-				}
-
 				// Step 1.2 For each fresh file:
 				// - Determine its type
 				// - If it is an alias, resolve it
 				// - Check whether the file is wanted by the file filter
 				// - Create a fresh node for the file
-
-				ArrayList freshNodeList = new ArrayList(freshFiles.length);
-				boolean isFileHidingEnabled = fileChooser.isFileHidingEnabled();
-				QuaquaFileSystemView fsv = getFileSystemView();
-				for (int i = 0; i < freshFiles.length; i++) {
-					File freshFile = freshFiles[i];
-
-					// Resolve alias and determine if fresh file is traversable
-					// and if it is a directory.
-					boolean freshIsTraversable;
-					int freshFileType = OSXFile.getFileType(freshFile);
-					boolean freshIsDirectory = freshFileType == OSXFile.FILE_TYPE_DIRECTORY;
-					File resolvedFreshFile = null;
-					boolean freshIsAlias;
-					if (isResolveAliasesToFiles()) {
-						freshIsAlias = freshFileType == OSXFile.FILE_TYPE_ALIAS;
-					} else {
-						freshIsAlias = false;
+				// If bulk scanning is enabled, the basic attributes of the
+				// fresh files are read in the same pass, and the fresh nodes
+				// are created while the directory is being read.
+				freshNodeList = new ArrayList<>();
+				chunkTimeMillis = startTime;
+				isFileHidingEnabled = fileChooser.isFileHidingEnabled();
+				fsv = getFileSystemView();
+				if (exists && isTraversable()) {
+					boolean isScanned = isBulkScan() && canScanFiles() && scanFiles(this);
+					if (this != validator) {
+						return;
 					}
-					if (freshIsAlias) {
-						resolvedFreshFile = OSXFile.resolveAlias(freshFile, true);
-						if (resolvedFreshFile == null) {
-							freshIsTraversable = false;
-						} else {
-							freshIsTraversable = fileChooser.isTraversable(resolvedFreshFile);
-							freshFileType = OSXFile.getFileType(resolvedFreshFile);
-							freshIsDirectory = freshFileType == OSXFile.FILE_TYPE_DIRECTORY;
+					if (!isScanned) {
+						// Chunks which have already been published are merged
+						// in phase 2. We must not publish them twice.
+						freshNodeList.clear();
+						chunk = null;
+						File[] freshFiles = getFiles();
+						if (this != validator) {
+							return;
 						}
-					} else {
-						freshIsTraversable = fileChooser.isTraversable(freshFile);
-						resolvedFreshFile = freshFile;
-					}
-					boolean freshIsHidden = fsv.isHiddenFile(freshFile);
-
-					/*
-					 * Special case: Network is visible under Computer even if it is hidden under /.
-					 */
-
-					if (freshIsHidden && freshIsDirectory && resolvedFreshFile.getPath().equals("/Network")) {
-						freshIsHidden = false;
-					}
-
-					// Skip the fresh file if it is hidden
-					if (!isFileHidingEnabled || !freshIsHidden) {
-
-						// Note: The following code is redundant with method
-						// createNode().
-						// Changes applied to this code may also have to
-						// be done in the other method.
-						if (freshIsAlias) {
-							if (freshIsDirectory) {
-								Node n = new AliasDirectoryNode(freshFile, resolvedFreshFile, freshIsHidden);
-								n.setTraversable(freshIsTraversable);
-								freshNodeList.add(n);
-							} else {
-								freshNodeList.add(new AliasNode(freshFile, resolvedFreshFile, freshIsHidden));
+						if (isParallelValidation() && freshFiles.length >= PARALLEL_THRESHOLD) {
+							int[] fileTypes = new int[freshFiles.length];
+							File[] resolvedFiles = new File[freshFiles.length];
+							int[] resolvedFileTypes = new int[freshFiles.length];
+							ForkJoinPool.commonPool().invoke(new FreshFileTypeTask(freshFiles, fileTypes, resolvedFiles,
+									resolvedFileTypes, 0, freshFiles.length));
+							for (int i = 0; i < freshFiles.length; i++) {
+								if (this != validator) {
+									return;
+								}
+								Node n = createFreshNode(freshFiles[i], fileTypes[i], resolvedFiles[i],
+										resolvedFileTypes[i]);
+								if (n != null) {
+									freshNodeList.add(n);
+								}
 							}
 						} else {
-							if (freshIsDirectory) {
-								Node n = new DirectoryNode(freshFile, freshIsHidden);
-								n.setTraversable(freshIsTraversable);
-								freshNodeList.add(n);
-							} else {
-								freshNodeList.add(new Node(freshFile, freshIsHidden));
+							for (int i = 0; i < freshFiles.length; i++) {
+								addFreshFile(freshFiles[i], null);
 							}
 						}
 					}
 				}
-				final Node[] freshNodes = (Node[]) freshNodeList.toArray(new Node[freshNodeList.size()]);
+				if (chunk != null && !chunk.isEmpty()) {
+					publishChunk();
+				}
+				final Node[] freshNodes = freshNodeList.toArray(new Node[freshNodeList.size()]);
+				freshNodeList = null;
 				if (this != validator) {
 					return;
 				}
 
 				// Step 1.3 Sort the fresh nodes
-				Arrays.sort(freshNodes, getNodeComparator());
+				// For large directories, the collation keys are computed in
+				// parallel before the nodes are sorted, because computing them
+				// is the expensive part of the comparisons. The user names are
+				// retrieved from the file chooser on this thread.
+				if (isParallelValidation() && freshNodes.length >= PARALLEL_THRESHOLD) {
+					String[] userNames = new String[freshNodes.length];
+					for (int i = 0; i < freshNodes.length; i++) {
+						userNames[i] = freshNodes[i].getUserName();
+					}
+					if (this != validator) {
+						return;
+					}
+					ForkJoinPool.commonPool()
+							.invoke(new CollationKeyTask(freshNodes, userNames, getCollator(), 0, freshNodes.length));
+					if (this != validator) {
+						return;
+					}
+					Arrays.parallelSort(freshNodes, getNodeComparator());
+				} else {
+					Arrays.sort(freshNodes, getNodeComparator());
+				}
+				if (this != validator) {
+					return;
+				}
+
+				// Step 1.4 Merge the fresh nodes with the old nodes
+				// The merge is computed against the current children. If the
+				// children are changed on the AWT thread in the mean time, the
+				// merge is computed again in phase 2.
+				final ChildrenMerge freshMerge = new ChildrenMerge(freshNodes, children);
 				if (this != validator) {
 					return;
 				}
@@ -1446,71 +1886,12 @@ public class FileSystemTreeModel implements TreeModel {
 							return;
 						}
 
-						// Step 2.1 Merge the fresh nodes with the old nodes
-						ArrayList mergedChildren = new ArrayList(freshFiles.length);
-						LinkedList newChildren = new LinkedList();
-						int[] newChildIndices = new int[freshFiles.length];
-						LinkedList deletedChildren = new LinkedList();
-						int[] deletedChildIndices = new int[getChildCount()];
-
-						int freshIndex, oldIndex, mergeIndex, comparison;
-						Node[] oldNodes = (children == null) ? new Node[0]
-								: (Node[]) children.toArray(new Node[children.size()]);
-
-						int count = freshNodes.length + oldNodes.length;
-						freshIndex = 0;
-						oldIndex = 0;
-						mergeIndex = 0;
-						int lastFreshIndex = -1;
-						File resolvedFreshFile = null;
-						Comparator comparator = getNodeComparator();
-						for (int i = 0; i < count; i++) {
-							if (freshIndex >= freshNodes.length) {
-								comparison = (oldIndex >= oldNodes.length) ? 0 : 1;
-							} else if (oldIndex >= oldNodes.length) {
-								comparison = -1;
-							} else {
-								// comparison = freshNodes[freshIndex].getCollationKey()
-								// .compareTo(oldNodes[oldIndex].getCollationKey());
-								comparison = comparator.compare(freshNodes[freshIndex], oldNodes[oldIndex]);
-
-								// This little trick is necessary to handle the special case,
-								// when a file gets replaced by a directory of the same name
-								// or vice versa.
-								if (comparison == 0) {
-									if (freshNodes[freshIndex].getAllowsChildren() != oldNodes[oldIndex]
-											.getAllowsChildren()) {
-										comparison = -1;
-									}
-								}
-							}
-
-							if (comparison < 0) {
-								newChildIndices[newChildren.size()] = mergeIndex;
-								Node newNode = freshNodes[freshIndex];
-								newNode.parent = DirectoryNode.this; // Link new child, this saves a loop in STEP 2
-								newChildren.add(newNode);
-								mergedChildren.add(newNode);
-								freshIndex++;
-								mergeIndex++;
-							} else if (comparison == 0) {
-								if (oldIndex < oldNodes.length) {
-									Node oldNode = oldNodes[oldIndex];
-									if (!doItFast) {
-										oldNode.invalidateInfo();
-									}
-									mergedChildren.add(oldNode);
-								}
-								oldIndex++;
-								freshIndex++;
-								mergeIndex++;
-							} else {
-								deletedChildIndices[deletedChildren.size()] = mergeIndex + deletedChildren.size()
-										- newChildren.size();
-								deletedChildren.add(oldNodes[oldIndex]);
-								oldIndex++;
-							}
+						// Step 2.1 Apply the merge of the fresh nodes with the old nodes
+						ChildrenMerge merge = freshMerge;
+						if (merge.oldChildren != children) {
+							merge = new ChildrenMerge(freshNodes, children);
 						}
+						merge.apply();
 
 						// Step 2.2:
 						// If the directory denoted by this Node does not exist,
@@ -1523,50 +1904,6 @@ public class FileSystemTreeModel implements TreeModel {
 							}
 						}
 
-						if (newChildren.size() > 0 || deletedChildren.size() > 0) {
-							// Unlink deleted children
-							for (Iterator i = deletedChildren.iterator(); i.hasNext();) {
-								Node n = (Node) i.next();
-								n.parent = null;
-								n.invalidateChildren();
-							}
-
-							// We do not need to link the new children, because we
-							// have done this in step 1 already. This saves the following
-							// iteration.
-							/*
-							 * for (Iterator i = newChildren.iterator(); i.hasNext(); ) { Node n = (Node)
-							 * i.next(); n.parent = Node.this; }
-							 */
-
-							// Inform listeners about the changes
-							// and replace the children with the merged children
-							if (newChildren.size() > 0 && deletedChildren.size() == 0) {
-								children = mergedChildren;
-								fireTreeNodesInserted(FileSystemTreeModel.this, getPath(),
-										ArrayUtil.truncate(newChildIndices, 0, newChildren.size()),
-										newChildren.toArray());
-							} else if (newChildren.size() == 0 && deletedChildren.size() > 0) {
-								children = mergedChildren;
-								fireTreeNodesRemoved(FileSystemTreeModel.this, getPath(),
-										ArrayUtil.truncate(deletedChildIndices, 0, deletedChildren.size()),
-										deletedChildren.toArray());
-							} else if (newChildren.size() > 0 && deletedChildren.size() > 0) {
-								// Instead of firing tree structure changed, we
-								// split the insertion and removal into two steps.
-								// This is needed, to update the selection in the
-								// JBrower properly.
-								removeAll(deletedChildren);
-								fireTreeNodesRemoved(FileSystemTreeModel.this, getPath(),
-										ArrayUtil.truncate(deletedChildIndices, 0, deletedChildren.size()),
-										deletedChildren.toArray());
-								children = mergedChildren;
-								fireTreeNodesInserted(FileSystemTreeModel.this, getPath(),
-										ArrayUtil.truncate(newChildIndices, 0, newChildren.size()),
-										newChildren.toArray());
-							}
-						}
-
 						validator = null;
 
 						// This is used to let the GUI know, that we have
@@ -1597,6 +1934,549 @@ public class FileSystemTreeModel implements TreeModel {
 						}
 
 						childrenState = VALID;
+
+						applyPendingWatchChanges();
+					}
+				});
+			}
+
+			/**
+			 * The merge of the sorted fresh nodes with the sorted old children of this
+			 * node. The merge is computed by walking both sequences once. It can be
+			 * computed on any thread, but it must be applied on the AWT event
+			 * dispatcher thread.
+			 */
+			private class ChildrenMerge {
+				/**
+				 * The children the merge has been computed for.
+				 */
+				final ArrayList oldChildren;
+				/**
+				 * The merged children. This is null if no children are inserted or deleted.
+				 */
+				private ArrayList mergedChildren;
+				/**
+				 * The old children without the deleted children. This is only computed if
+				 * children are inserted and deleted.
+				 */
+				private ArrayList remainingChildren;
+				private Node[] insertedNodes;
+				/**
+				 * The indices of the inserted nodes in the merged children.
+				 */
+				private int[] insertedIndices;
+				private int insertedCount;
+				private Node[] deletedNodes;
+				/**
+				 * The indices of the deleted nodes in the old children.
+				 */
+				private int[] deletedIndices;
+				private int deletedCount;
+				/**
+				 * The old nodes which denote the same files as fresh nodes, but whose
+				 * cached data may be stale, and the corresponding fresh nodes.
+				 */
+				private Node[] staleNodes;
+				private Node[] staleFreshNodes;
+				private int staleCount;
+
+				ChildrenMerge(Node[] freshNodes, ArrayList oldChildren) {
+					this.oldChildren = oldChildren;
+					Node[] oldNodes = (oldChildren == null) ? new Node[0]
+							: (Node[]) oldChildren.toArray(new Node[oldChildren.size()]);
+
+					insertedNodes = new Node[freshNodes.length];
+					insertedIndices = new int[freshNodes.length];
+					deletedNodes = new Node[oldNodes.length];
+					deletedIndices = new int[oldNodes.length];
+					staleNodes = new Node[Math.min(freshNodes.length, oldNodes.length)];
+					staleFreshNodes = new Node[staleNodes.length];
+
+					Comparator comparator = getNodeComparator();
+					int freshIndex = 0;
+					int oldIndex = 0;
+					int mergeIndex = 0;
+					while (freshIndex < freshNodes.length || oldIndex < oldNodes.length) {
+						int comparison;
+						if (freshIndex >= freshNodes.length) {
+							comparison = 1;
+						} else if (oldIndex >= oldNodes.length) {
+							comparison = -1;
+						} else if (freshNodes[freshIndex] == oldNodes[oldIndex]) {
+							// Nodes which have been published in a chunk
+							// are fresh already.
+							comparison = 0;
+						} else {
+							comparison = comparator.compare(freshNodes[freshIndex], oldNodes[oldIndex]);
+
+							// This little trick is necessary to handle the special case,
+							// when a file gets replaced by a directory of the same name
+							// or vice versa.
+							if (comparison == 0) {
+								if (freshNodes[freshIndex].getAllowsChildren() != oldNodes[oldIndex]
+										.getAllowsChildren()) {
+									comparison = -1;
+								}
+							}
+						}
+
+						if (comparison < 0) {
+							insertedIndices[insertedCount] = mergeIndex;
+							insertedNodes[insertedCount++] = freshNodes[freshIndex];
+							freshIndex++;
+							mergeIndex++;
+						} else if (comparison == 0) {
+							Node oldNode = oldNodes[oldIndex];
+							Node freshNode = freshNodes[freshIndex];
+							if (oldNode != freshNode && isStale(oldNode, freshNode)) {
+								staleNodes[staleCount] = oldNode;
+								staleFreshNodes[staleCount++] = freshNode;
+							}
+							oldIndex++;
+							freshIndex++;
+							mergeIndex++;
+						} else {
+							deletedIndices[deletedCount] = oldIndex;
+							deletedNodes[deletedCount++] = oldNodes[oldIndex];
+							oldIndex++;
+						}
+					}
+
+					if (insertedCount > 0 || deletedCount > 0) {
+						mergedChildren = new ArrayList(mergeIndex);
+						remainingChildren = (insertedCount > 0 && deletedCount > 0)
+								? new ArrayList(oldNodes.length - deletedCount)
+								: null;
+						int insertedIndex = 0;
+						int deletedIndex = 0;
+						oldIndex = 0;
+						for (int i = 0; i < mergeIndex; i++) {
+							if (insertedIndex < insertedCount && insertedIndices[insertedIndex] == i) {
+								mergedChildren.add(insertedNodes[insertedIndex++]);
+							} else {
+								while (deletedIndex < deletedCount && deletedIndices[deletedIndex] == oldIndex) {
+									deletedIndex++;
+									oldIndex++;
+								}
+								mergedChildren.add(oldNodes[oldIndex]);
+								if (remainingChildren != null) {
+									remainingChildren.add(oldNodes[oldIndex]);
+								}
+								oldIndex++;
+							}
+						}
+					}
+				}
+
+				/**
+				 * Returns true, if the cached data of the old node may be stale. If both
+				 * nodes have been created from a bulk scan, the data is only considered
+				 * stale if the modification time or the length of the file has changed.
+				 */
+				private boolean isStale(Node oldNode, Node freshNode) {
+					return !oldNode.hasAttributes || !freshNode.hasAttributes
+							|| oldNode.lastModified != freshNode.lastModified
+							|| oldNode.fileLength != freshNode.fileLength;
+				}
+
+				/**
+				 * Replaces the children of this node by the merged children, and informs
+				 * the listeners. If nothing has changed, no events are fired.
+				 * <p>
+				 * This method must be called on the AWT event dispatcher thread.
+				 */
+				void apply() {
+					for (int i = 0; i < staleCount; i++) {
+						if (!doItFast) {
+							staleNodes[i].invalidateInfo();
+						}
+						staleNodes[i].updateAttributes(staleFreshNodes[i]);
+					}
+
+					if (insertedCount == 0 && deletedCount == 0) {
+						return;
+					}
+
+					// Link the inserted children, and unlink the deleted children
+					for (int i = 0; i < insertedCount; i++) {
+						insertedNodes[i].parent = DirectoryNode.this;
+					}
+					for (int i = 0; i < deletedCount; i++) {
+						Node n = deletedNodes[i];
+						n.parent = null;
+						n.invalidateChildren();
+					}
+
+					// Inform listeners about the changes
+					// and replace the children with the merged children
+					if (deletedCount == 0) {
+						children = mergedChildren;
+						fireTreeNodesInserted(FileSystemTreeModel.this, getPath(),
+								ArrayUtil.truncate(insertedIndices, 0, insertedCount),
+								Arrays.copyOf(insertedNodes, insertedCount));
+					} else if (insertedCount == 0) {
+						children = mergedChildren;
+						fireTreeNodesRemoved(FileSystemTreeModel.this, getPath(),
+								ArrayUtil.truncate(deletedIndices, 0, deletedCount),
+								Arrays.copyOf(deletedNodes, deletedCount));
+					} else {
+						// Instead of firing tree structure changed, we
+						// split the insertion and removal into two steps.
+						// This is needed, to update the selection in the
+						// JBrower properly.
+						children = remainingChildren;
+						fireTreeNodesRemoved(FileSystemTreeModel.this, getPath(),
+								ArrayUtil.truncate(deletedIndices, 0, deletedCount),
+								Arrays.copyOf(deletedNodes, deletedCount));
+						children = mergedChildren;
+						fireTreeNodesInserted(FileSystemTreeModel.this, getPath(),
+								ArrayUtil.truncate(insertedIndices, 0, insertedCount),
+								Arrays.copyOf(insertedNodes, insertedCount));
+					}
+				}
+			}
+
+			/**
+			 * Step 1.2 for a single fresh file. Creates a fresh node for the file unless
+			 * it is hidden, and publishes a chunk of fresh nodes if enough nodes have been
+			 * collected or if enough time has passed since the last chunk was published.
+			 *
+			 * @param freshFile  The fresh file.
+			 * @param freshAttrs The basic attributes of the fresh file, or null if they
+			 *                   have not been read.
+			 */
+			void addFreshFile(File freshFile, BasicFileAttributes freshAttrs) {
+				Node n = createFreshNode(freshFile, freshAttrs);
+				if (n != null) {
+					freshNodeList.add(n);
+
+					if (chunk != null) {
+						chunk.add(n);
+						if (chunk.size() >= chunkSize
+								|| System.currentTimeMillis() - chunkTimeMillis >= chunkMillis) {
+							publishChunk();
+						}
+					}
+				}
+			}
+
+			/**
+			 * Creates a fresh node for the file.
+			 * <p>
+			 * This method calls the file chooser, and must only be called by the
+			 * validator thread.
+			 *
+			 * @param freshFile  The fresh file.
+			 * @param freshAttrs The basic attributes of the fresh file, or null if they
+			 *                   have not been read.
+			 * @return The fresh node, or null if the file is hidden.
+			 */
+			private Node createFreshNode(File freshFile, BasicFileAttributes freshAttrs) {
+				if (freshAttrs == null) {
+					int freshFileType = getFreshFileType(freshFile);
+					File resolvedFreshFile = resolveFreshFile(freshFile, freshFileType);
+					return createFreshNode(freshFile, freshFileType, resolvedFreshFile,
+							getResolvedFileType(freshFileType, resolvedFreshFile));
+				}
+
+				// Bulk scanning is only done without native code, so
+				// there are no aliases. The traversability is only
+				// needed for directory nodes.
+				boolean freshIsDirectory = freshAttrs.isDirectory();
+				boolean freshIsTraversable;
+				if (!freshIsDirectory) {
+					freshIsTraversable = false;
+				} else if (doItFast) {
+					freshIsTraversable = true;
+				} else {
+					freshIsTraversable = fileChooser.isTraversable(freshFile);
+				}
+				boolean freshIsHidden = fsv.isHiddenFile(freshFile, freshAttrs);
+				Node n = createFreshNode(freshFile, freshFile, false, freshIsDirectory, freshIsTraversable,
+						freshIsHidden);
+				if (n != null) {
+					n.setAttributes(freshAttrs);
+				}
+				return n;
+			}
+
+			/**
+			 * Creates a fresh node for a file, of which the file type has already been
+			 * read.
+			 * <p>
+			 * This method calls the file chooser, and must only be called by the
+			 * validator thread.
+			 *
+			 * @param freshFile         The fresh file.
+			 * @param freshFileType     The file type returned by
+			 *                          {@link #getFreshFileType}.
+			 * @param resolvedFreshFile The file returned by {@link #resolveFreshFile}.
+			 * @param resolvedFileType  The file type returned by
+			 *                          {@link #getResolvedFileType}.
+			 * @return The fresh node, or null if the file is hidden.
+			 */
+			private Node createFreshNode(File freshFile, int freshFileType, File resolvedFreshFile,
+					int resolvedFileType) {
+				// Determine if fresh file is traversable and if it is a
+				// directory.
+				boolean freshIsAlias = freshFileType == OSXFile.FILE_TYPE_ALIAS;
+				boolean freshIsDirectory = resolvedFileType == OSXFile.FILE_TYPE_DIRECTORY;
+				boolean freshIsTraversable;
+				if (resolvedFreshFile == null) {
+					freshIsTraversable = false;
+				} else {
+					freshIsTraversable = fileChooser.isTraversable(resolvedFreshFile);
+				}
+				boolean freshIsHidden = fsv.isHiddenFile(freshFile);
+				return createFreshNode(freshFile, resolvedFreshFile, freshIsAlias, freshIsDirectory,
+						freshIsTraversable, freshIsHidden);
+			}
+
+			/**
+			 * Creates a fresh node unless it is hidden.
+			 *
+			 * @return The fresh node, or null if the file is hidden.
+			 */
+			private Node createFreshNode(File freshFile, File resolvedFreshFile, boolean freshIsAlias,
+					boolean freshIsDirectory, boolean freshIsTraversable, boolean freshIsHidden) {
+				/*
+				 * Special case: Network is visible under Computer even if it is hidden under /.
+				 */
+
+				if (freshIsHidden && freshIsDirectory && resolvedFreshFile.getPath().equals("/Network")) {
+					freshIsHidden = false;
+				}
+
+				// Skip the fresh file if it is hidden
+				if (!isFileHidingEnabled || !freshIsHidden) {
+
+					// Note: The following code is redundant with method
+					// createNode().
+					// Changes applied to this code may also have to
+					// be done in the other method.
+					Node n;
+					if (freshIsAlias) {
+						if (freshIsDirectory) {
+							n = new AliasDirectoryNode(freshFile, resolvedFreshFile, freshIsHidden);
+							n.setTraversable(freshIsTraversable);
+						} else {
+							n = new AliasNode(freshFile, resolvedFreshFile, freshIsHidden);
+						}
+					} else {
+						if (freshIsDirectory) {
+							n = new DirectoryNode(freshFile, freshIsHidden);
+							n.setTraversable(freshIsTraversable);
+						} else {
+							n = new Node(freshFile, freshIsHidden);
+						}
+					}
+					return n;
+				}
+				return null;
+			}
+
+			/**
+			 * Returns the file type of a fresh file. Aliases are only reported, if they
+			 * are resolved to files.
+			 * <p>
+			 * This method does not call the file chooser, and may be called by multiple
+			 * threads at the same time.
+			 */
+			private int getFreshFileType(File freshFile) {
+				int freshFileType = OSXFile.getFileType(freshFile);
+				if (freshFileType == OSXFile.FILE_TYPE_ALIAS && !isResolveAliasesToFiles()) {
+					freshFileType = OSXFile.FILE_TYPE_FILE;
+				}
+				return freshFileType;
+			}
+
+			/**
+			 * Resolves a fresh file, if it is an alias.
+			 * <p>
+			 * This method does not call the file chooser, and may be called by multiple
+			 * threads at the same time.
+			 *
+			 * @return The resolved file, or null if the alias can not be resolved.
+			 */
+			private File resolveFreshFile(File freshFile, int freshFileType) {
+				return (freshFileType == OSXFile.FILE_TYPE_ALIAS) ? OSXFile.resolveAlias(freshFile, true) : freshFile;
+			}
+
+			/**
+			 * Returns the file type of a resolved fresh file. The file type of an alias,
+			 * which can not be resolved, is the file type of the alias.
+			 * <p>
+			 * This method does not call the file chooser, and may be called by multiple
+			 * threads at the same time.
+			 */
+			private int getResolvedFileType(int freshFileType, File resolvedFreshFile) {
+				if (freshFileType == OSXFile.FILE_TYPE_ALIAS && resolvedFreshFile != null) {
+					return OSXFile.getFileType(resolvedFreshFile);
+				}
+				return freshFileType;
+			}
+
+			/**
+			 * Step 1.2 for a slice of the fresh files. Reads the file types of the
+			 * fresh files and resolves aliases. Large slices are split up into tasks
+			 * which are processed in parallel. The fresh nodes are created by the
+			 * validator thread, because creating them calls the file chooser.
+			 */
+			private class FreshFileTypeTask extends RecursiveAction {
+				private static final long serialVersionUID = 1L;
+				private final File[] files;
+				private final int[] fileTypes;
+				private final File[] resolvedFiles;
+				private final int[] resolvedFileTypes;
+				private final int from;
+				private final int to;
+
+				/**
+				 * Creates a task which stores the file types and the resolved files of the
+				 * files from index {@code from} inclusive to {@code to} exclusive in the
+				 * arrays.
+				 */
+				FreshFileTypeTask(File[] files, int[] fileTypes, File[] resolvedFiles, int[] resolvedFileTypes,
+						int from, int to) {
+					this.files = files;
+					this.fileTypes = fileTypes;
+					this.resolvedFiles = resolvedFiles;
+					this.resolvedFileTypes = resolvedFileTypes;
+					this.from = from;
+					this.to = to;
+				}
+
+				@Override
+				protected void compute() {
+					if (to - from <= PARALLEL_SLICE_SIZE) {
+						for (int i = from; i < to && DirectoryValidator.this == validator; i++) {
+							fileTypes[i] = getFreshFileType(files[i]);
+							resolvedFiles[i] = resolveFreshFile(files[i], fileTypes[i]);
+							resolvedFileTypes[i] = getResolvedFileType(fileTypes[i], resolvedFiles[i]);
+						}
+					} else {
+						int mid = (from + to) >>> 1;
+						invokeAll(
+								new FreshFileTypeTask(files, fileTypes, resolvedFiles, resolvedFileTypes, from, mid),
+								new FreshFileTypeTask(files, fileTypes, resolvedFiles, resolvedFileTypes, mid, to));
+					}
+				}
+			}
+
+			/**
+			 * Computes the collation keys of a slice of the fresh nodes from their user
+			 * names. Large slices are split up into tasks which are processed in
+			 * parallel. Each task uses its own copy of the collator, because collators
+			 * are not thread safe.
+			 */
+			private class CollationKeyTask extends RecursiveAction {
+				private static final long serialVersionUID = 1L;
+				private final Node[] nodes;
+				private final String[] userNames;
+				private final Collator collator;
+				private final int from;
+				private final int to;
+
+				/**
+				 * Creates a task which computes the collation keys of the nodes from index
+				 * {@code from} inclusive to {@code to} exclusive.
+				 */
+				CollationKeyTask(Node[] nodes, String[] userNames, Collator collator, int from, int to) {
+					this.nodes = nodes;
+					this.userNames = userNames;
+					this.collator = collator;
+					this.from = from;
+					this.to = to;
+				}
+
+				@Override
+				protected void compute() {
+					if (to - from <= PARALLEL_SLICE_SIZE) {
+						Collator sliceCollator = (Collator) collator.clone();
+						for (int i = from; i < to && DirectoryValidator.this == validator; i++) {
+							Node node = nodes[i];
+							if (node.collationKey == null) {
+								node.collationKey = sliceCollator.getCollationKey(userNames[i]);
+							}
+						}
+					} else {
+						int mid = (from + to) >>> 1;
+						invokeAll(new CollationKeyTask(nodes, userNames, collator, from, mid),
+								new CollationKeyTask(nodes, userNames, collator, mid, to));
+					}
+				}
+			}
+
+			/**
+			 * Sorts the fresh nodes collected since the last chunk was published, and
+			 * inserts them into the children of this node on the AWT event dispatcher
+			 * thread. The nodes are linked to this node on the AWT thread, so that they
+			 * are not mistaken as children while they are still in flight.
+			 * <p>
+			 * If the AWT thread has not caught up with the previous chunks yet, the
+			 * chunks are inserted together with a single event.
+			 * <p>
+			 * The size of the next chunk grows with the number of published nodes, and
+			 * the time until the next chunk is doubled, so that the AWT thread merges
+			 * a large directory only a logarithmic number of times.
+			 */
+			private void publishChunk() {
+				Node[] chunkNodes = chunk.toArray(new Node[chunk.size()]);
+				chunk.clear();
+				chunkTimeMillis = System.currentTimeMillis();
+				publishedCount += chunkNodes.length;
+				chunkSize = Math.max(STREAMING_CHUNK_SIZE, publishedCount);
+				chunkMillis *= 2;
+				Arrays.sort(chunkNodes, getNodeComparator());
+
+				synchronized (publishedNodes) {
+					publishedNodes.addAll(Arrays.asList(chunkNodes));
+					if (isPublishPending) {
+						return;
+					}
+					isPublishPending = true;
+				}
+
+				SwingUtilities.invokeLater(new Runnable() {
+
+					@Override
+					public void run() {
+						Node[] chunkNodes;
+						synchronized (publishedNodes) {
+							chunkNodes = publishedNodes.toArray(new Node[publishedNodes.size()]);
+							publishedNodes.clear();
+							isPublishPending = false;
+						}
+
+						// Check if we have become obsolete
+						if ((DirectoryValidator.this != validator)
+								|| (getRoot() != FileSystemTreeModel.this.getRoot())) {
+							return;
+						}
+
+						// The chunks are sorted already, so this is cheap.
+						Comparator comparator = getNodeComparator();
+						Arrays.sort(chunkNodes, comparator);
+
+						// Merge the sorted chunks with the sorted children.
+						int oldCount = (children == null) ? 0 : children.size();
+						ArrayList mergedChildren = new ArrayList(oldCount + chunkNodes.length);
+						int[] chunkIndices = new int[chunkNodes.length];
+						int oldIndex = 0;
+						for (int i = 0; i < chunkNodes.length; i++) {
+							while (oldIndex < oldCount
+									&& comparator.compare(children.get(oldIndex), chunkNodes[i]) <= 0) {
+								mergedChildren.add(children.get(oldIndex++));
+							}
+							chunkIndices[i] = mergedChildren.size();
+							chunkNodes[i].parent = DirectoryNode.this;
+							mergedChildren.add(chunkNodes[i]);
+						}
+						while (oldIndex < oldCount) {
+							mergedChildren.add(children.get(oldIndex++));
+						}
+						children = mergedChildren;
+						fireTreeNodesInserted(FileSystemTreeModel.this, getPath(), chunkIndices, chunkNodes);
 					}
 				});
 			}
@@ -1612,6 +2492,21 @@ public class FileSystemTreeModel implements TreeModel {
 		 * precedence over directories which had been visited already. 
 		 */
 		private long bestBeforeTimeMillis = 0;
+		/**
+		 * The key with which this directory is watched for changes, or null if the
+		 * directory is not watched. While the directory is watched, it is not read
+		 * again when its time to live has expired.
+		 */
+		private WatchKey watchKey;
+		/**
+		 * The listener which receives the events of the watched directory.
+		 */
+		private WatchListener watchListener;
+		/**
+		 * The events which have been received while the children were being
+		 * validated. They are applied when the validation has finished.
+		 */
+		private ArrayList<WatchChange> pendingWatchChanges;
 
 		public DirectoryNode(File file, boolean isHidden) {
 			super(file, isHidden);
@@ -1668,7 +2563,11 @@ public class FileSystemTreeModel implements TreeModel {
 		 */
 		@Override
 		public void lazyInvalidateChildren() {
-			if (validator == null && bestBeforeTimeMillis < System.currentTimeMillis()) {
+			if (watchKey != null) {
+				// Mark the directory as recently used
+				watchedNodes.get(this);
+			}
+			if (validator == null && watchKey == null && bestBeforeTimeMillis < System.currentTimeMillis()) {
 				if (DEBUG) {
 					System.out.println("FileSystemTreeModel.lazyInvalidateChildren YES  validator=" + validator
 							+ " good for " + (bestBeforeTimeMillis - System.currentTimeMillis()) + " millis "
@@ -1757,7 +2656,18 @@ public class FileSystemTreeModel implements TreeModel {
 			if (childrenState == INVALID) {
 				childrenState = VALIDATING;
 
-				validator = new DirectoryValidator();
+				// We start watching the directory before we read it, so that
+				// no changes get lost. Changes which are reported while
+				// we read the directory are applied afterwards.
+				watch();
+
+				// We only stream chunks into an empty directory node, because
+				// the chunks are not merged with existing children.
+				// A cached listing is only used if the directory has never
+				// been validated before.
+				validator = new DirectoryValidator(
+						isStreamingValidation() && (children == null || children.isEmpty()),
+						isListingCache() && bestBeforeTimeMillis == 0);
 				//
 				directoryDispatcher.dispatch(validator, bestBeforeTimeMillis == 0);
 
@@ -1781,6 +2691,246 @@ public class FileSystemTreeModel implements TreeModel {
 			}
 		}
 
+		/**
+		 * Returns true, if the directory denoted by this node can be watched for
+		 * changes. Nodes which provide their children from somewhere else than from
+		 * the directory denoted by the node return false.
+		 */
+		protected boolean canWatch() {
+			return true;
+		}
+
+		/**
+		 * Starts watching the directory denoted by this node for changes, if
+		 * watching directories is enabled and supported.
+		 */
+		private void watch() {
+			if (watchKey != null) {
+				// Mark the directory as recently used
+				watchedNodes.get(this);
+				return;
+			}
+			if (!isWatchingDirectories || isDirectoryWatchingUnsupported || !canWatch()) {
+				return;
+			}
+			if (directoryWatcher == null) {
+				directoryWatcher = DirectoryWatcher.create();
+				if (directoryWatcher == null) {
+					isDirectoryWatchingUnsupported = true;
+					return;
+				}
+			}
+			File dir = lazyGetResolvedFile();
+			if (dir != null) {
+				WatchListener listener = new WatchListener();
+				WatchKey key = directoryWatcher.register(dir, listener);
+				if (key != null) {
+					watchKey = key;
+					watchListener = listener;
+					watchedNodes.put(this, key);
+				}
+			}
+		}
+
+		/**
+		 * Stops watching the directory denoted by this node. From now on, the
+		 * directory is read again when its time to live has expired.
+		 *
+		 * @param isRemove Set this to true, if the node shall be removed from the
+		 *                 watched nodes.
+		 */
+		void unwatch(boolean isRemove) {
+			if (watchKey != null) {
+				directoryWatcher.cancel(watchKey, watchListener);
+				if (isRemove) {
+					watchedNodes.remove(this);
+				}
+				watchKey = null;
+				watchListener = null;
+				pendingWatchChanges = null;
+			}
+		}
+
+		/**
+		 * Applies the changes of the watched directory to the children of this node.
+		 * <p>
+		 * This method must be called on the AWT event dispatcher thread.
+		 */
+		private void applyWatchChanges(WatchListener listener, ArrayList<WatchChange> changes, boolean isOverflow,
+				boolean isValid) {
+			// Check if we have become obsolete
+			if (listener != watchListener) {
+				return;
+			}
+			if (getRoot() != FileSystemTreeModel.this.getRoot()) {
+				unwatch(true);
+				return;
+			}
+			if (!isValid) {
+				unwatch(true);
+			}
+
+			if (childrenState == INVALID) {
+				// The directory will be read anyway.
+				return;
+			}
+			if (isOverflow || !isValid) {
+				// We do not know what has changed, so we read the directory again.
+				invalidateChildren();
+				validateChildren();
+			} else if (childrenState == VALIDATING) {
+				// We do not know whether the changes have been read, so we
+				// apply them when we have finished reading.
+				if (pendingWatchChanges == null) {
+					pendingWatchChanges = new ArrayList<>();
+				}
+				pendingWatchChanges.addAll(changes);
+			} else {
+				for (WatchChange change : changes) {
+					applyWatchChange(change);
+				}
+			}
+		}
+
+		/**
+		 * Applies the changes which have been received while the children were being
+		 * validated.
+		 */
+		private void applyPendingWatchChanges() {
+			if (pendingWatchChanges != null) {
+				ArrayList<WatchChange> changes = pendingWatchChanges;
+				pendingWatchChanges = null;
+				for (WatchChange change : changes) {
+					applyWatchChange(change);
+				}
+			}
+		}
+
+		/**
+		 * Applies a single change to the children of this node. The changes are
+		 * idempotent, so it does not matter whether the change has already been
+		 * read from the directory.
+		 * <p>
+		 * The nodes for created files are created here, and not on the watcher
+		 * thread, because creating them calls the file chooser, and file views and
+		 * file system views are not thread safe.
+		 */
+		private void applyWatchChange(WatchChange change) {
+			int index = getIndexOfChildForName(change.file.getName());
+			Node node = (change.kind == StandardWatchEventKinds.ENTRY_CREATE) ? createNode(change.file) : null;
+			if (change.kind == StandardWatchEventKinds.ENTRY_DELETE) {
+				if (index != -1) {
+					removeWatchedChild(index);
+				}
+			} else if (index != -1) {
+				Node child = (Node) children.get(index);
+				if (node != null && node.getAllowsChildren() != child.getAllowsChildren()) {
+					// A file has been replaced by a directory of the same name or vice
+					// versa.
+					removeWatchedChild(index);
+					insertWatchedChild(node);
+				} else {
+					child.invalidateInfo();
+					child.hasAttributes = false;
+					fireTreeNodeChanged(child);
+				}
+			} else if (node != null) {
+				insertWatchedChild(node);
+			}
+		}
+
+		private int getIndexOfChildForName(String name) {
+			ArrayList c = children;
+			if (c != null) {
+				for (int i = 0, n = c.size(); i < n; i++) {
+					if (((Node) c.get(i)).getFile().getName().equals(name)) {
+						return i;
+					}
+				}
+			}
+			return -1;
+		}
+
+		/**
+		 * Inserts a child at its sorted position, unless it is hidden.
+		 */
+		private void insertWatchedChild(Node newChild) {
+			if (fileChooser.isFileHidingEnabled() && newChild.isHidden()) {
+				return;
+			}
+
+			// The children are sorted, so we can do a binary search.
+			Comparator comparator = getNodeComparator();
+			int low = 0;
+			int high = (children == null) ? 0 : children.size();
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (comparator.compare(children.get(mid), newChild) <= 0) {
+					low = mid + 1;
+				} else {
+					high = mid;
+				}
+			}
+
+			ArrayList newChildren = (children == null) ? new ArrayList() : new ArrayList(children);
+			newChildren.add(low, newChild);
+			newChild.parent = this;
+			children = newChildren;
+			fireTreeNodesInserted(FileSystemTreeModel.this, getPath(), new int[] { low }, new Object[] { newChild });
+		}
+
+		private void removeWatchedChild(int index) {
+			ArrayList newChildren = new ArrayList(children);
+			Node child = (Node) newChildren.remove(index);
+			children = newChildren;
+			child.parent = null;
+			child.invalidateChildren();
+			fireTreeNodesRemoved(FileSystemTreeModel.this, getPath(), new int[] { index }, new Object[] { child });
+		}
+
+		/**
+		 * A change of the watched directory.
+		 */
+		private class WatchChange {
+			final WatchEvent.Kind<?> kind;
+			final File file;
+
+			WatchChange(WatchEvent.Kind<?> kind, File file) {
+				this.kind = kind;
+				this.file = file;
+			}
+		}
+
+		/**
+		 * Receives the events of the watched directory on the watcher thread, and
+		 * applies them on the AWT event dispatcher thread.
+		 */
+		private class WatchListener implements DirectoryWatcher.Listener {
+			@Override
+			public void directoryChanged(File dir, List<WatchEvent<?>> events, boolean isValid) {
+				boolean isOverflow = !isValid || events.size() > MAX_WATCH_EVENTS;
+				final ArrayList<WatchChange> changes = new ArrayList<>(events.size());
+				for (int i = 0, n = events.size(); i < n && !isOverflow; i++) {
+					WatchEvent<?> event = events.get(i);
+					if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+						isOverflow = true;
+					} else {
+						changes.add(new WatchChange(event.kind(), new File(dir, event.context().toString())));
+					}
+				}
+
+				final boolean finalIsOverflow = isOverflow;
+				final boolean finalIsValid = isValid;
+				SwingUtilities.invokeLater(new Runnable() {
+
+					@Override
+					public void run() {
+						applyWatchChanges(WatchListener.this, changes, finalIsOverflow, finalIsValid);
+					}
+				});
+			}
+		}
+
 		@Override
 		public Enumeration children() {
 			autoValidateChildren();
@@ -1791,14 +2941,6 @@ public class FileSystemTreeModel implements TreeModel {
 			}
 		}
 
-		private void removeAll(LinkedList deletedChildren) {
-			children.removeAll(deletedChildren);
-			for (Iterator i = deletedChildren.iterator(); i.hasNext();) {
-				Node n = (Node) i.next();
-				n.parent = null;
-			}
-		}
-
 		@Override
 		public boolean getAllowsChildren() {
 			return true;
@@ -1841,10 +2983,9 @@ public class FileSystemTreeModel implements TreeModel {
 				oldParent.remove(newChild);
 			}
 			newChild.setParent(this);
-			if (children == null) {
-				children = new ArrayList();
-			}
-			children.add(childIndex, newChild);
+			ArrayList newChildren = (children == null) ? new ArrayList() : new ArrayList(children);
+			newChildren.add(childIndex, newChild);
+			children = newChildren;
 		}
 
 		@Override
@@ -1874,7 +3015,9 @@ public class FileSystemTreeModel implements TreeModel {
 			invalidateChildren();
 
 			MutableTreeNode child = (MutableTreeNode) getChildAt(childIndex);
-			children.remove(childIndex);
+			ArrayList newChildren = new ArrayList(children);
+			newChildren.remove(childIndex);
+			children = newChildren;
 			child.setParent(null);
 		}
 
@@ -1890,6 +3033,100 @@ public class FileSystemTreeModel implements TreeModel {
 			return files;
 		}
 
+		/**
+		 * Returns true, if the children of this node can be read in a bulk scan. This
+		 * is false for nodes which override {@link #getFiles}
+		 * to provide their children from somewhere else than from the directory
+		 * denoted by the node.
+		 */
+		protected boolean canScanFiles() {
+			return true;
+		}
+
+		/**
+		 * Reads the directory denoted by this node together with the basic attributes
+		 * of its entries in a single pass, and hands each entry over to the provided
+		 * validator. Symbolic links are followed. The attributes of broken links are
+		 * those of the link itself.
+		 *
+		 * @param owner The validator on whose behalf the directory is read. The scan
+		 *              stops early, if the validator becomes obsolete.
+		 * @return Returns true on success, false if the directory could not be read.
+		 */
+		private boolean scanFiles(final DirectoryValidator owner) {
+			if (DEBUG) {
+				System.out.println("FileSystemTreeModel scanFiles " + lazyGetResolvedFile());
+			}
+			final File dir = lazyGetResolvedFile();
+			if (dir == null) {
+				return false;
+			}
+			final Path start = dir.toPath();
+			final int[] count = new int[1];
+
+			// Try to create the fresh nodes from a cached listing
+			long dirLastModified = dir.lastModified();
+			long readMillis = System.currentTimeMillis();
+			if (owner.isCacheAllowed) {
+				DirectoryListingCache.Listing listing = DirectoryListingCache.get(dir, dirLastModified);
+				if (listing != null) {
+					for (int i = 0; i < listing.names.length && owner == validator; i++) {
+						owner.addFreshFile(new File(dir, listing.names[i]), listing.attributes[i]);
+					}
+					if (DEBUG) {
+						System.out.println("FileSystemTreeModel scanFiles " + dir + " returns " + listing.names.length
+								+ " cached");
+					}
+					return true;
+				}
+			}
+
+			final ArrayList<String> names = isListingCache() ? new ArrayList<String>() : null;
+			final ArrayList<BasicFileAttributes> attributesList = isListingCache()
+					? new ArrayList<BasicFileAttributes>()
+					: null;
+			try {
+				Files.walkFileTree(start, EnumSet.of(FileVisitOption.FOLLOW_LINKS), 1,
+						new SimpleFileVisitor<Path>() {
+							@Override
+							public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+								if (owner != validator) {
+									return FileVisitResult.TERMINATE;
+								}
+								String name = file.getFileName().toString();
+								owner.addFreshFile(new File(dir, name), attributes);
+								if (names != null) {
+									names.add(name);
+									attributesList.add(DirectoryListingCache.copyOf(attributes));
+								}
+								count[0]++;
+								return FileVisitResult.CONTINUE;
+							}
+
+							@Override
+							public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
+								if (file.equals(start)) {
+									throw exc;
+								}
+								// The entry has vanished or can not be read. We skip it.
+								return FileVisitResult.CONTINUE;
+							}
+						});
+			} catch (IOException | SecurityException e) {
+				if (DEBUG) {
+					System.out.println("FileSystemTreeModel scanFiles " + dir + " failed " + e);
+				}
+				return false;
+			}
+			if (names != null && owner == validator) {
+				DirectoryListingCache.put(dir, dirLastModified, readMillis, names, attributesList);
+			}
+			if (DEBUG) {
+				System.out.println("FileSystemTreeModel scanFiles " + dir + " returns " + count[0]);
+			}
+			return true;
+		}
+
 		protected long getDirectoryTTL() {
 			return 2000;
 		}
@@ -1921,6 +3158,16 @@ public class FileSystemTreeModel implements TreeModel {
 			return 1000;
 		}
 
+		@Override
+		protected boolean canScanFiles() {
+			return false;
+		}
+
+		@Override
+		protected boolean canWatch() {
+			return false;
+		}
+
 		@Override
 		protected File[] getFiles() {
 //            LinkedList list = new LinkedList();
@@ -13,6 +13,7 @@
 package ch.randelshofer.quaqua.filechooser;
 
 import java.io.File;
+import java.nio.file.attribute.BasicFileAttributes;
 
 import ch.randelshofer.quaqua.osx.OSXFile;
 
@@ -70,7 +71,16 @@ public class LinuxFileSystemView extends QuaquaFileSystemView {
 	 */
 	@Override
 	public boolean isHiddenFile(File f) {
-		if (f.isHidden()) {
+		return isHiddenFile(f, null);
+	}
+
+	/**
+	 * Returns whether a file is hidden or not. If the attributes of the file are
+	 * provided, they are used instead of probing the file system again.
+	 */
+	@Override
+	public boolean isHiddenFile(File f, BasicFileAttributes attrs) {
+		if (attrs == null && f.isHidden()) {
 			return true;
 		} else {
 			String name = f.getName();
@@ -86,16 +86,111 @@ public class OSXCollator extends Collator {
 		}
 	}
 
+	/**
+	 * Compares the source string to the target string.
+	 * <p>
+	 * The strings are first walked in place. If they differ in a sequence of
+	 * digits following a common prefix, the sequences are compared numerically,
+	 * which yields the same result as comparing the expanded strings, without
+	 * building them. In all other cases, the expanded strings are compared by the
+	 * collator.
+	 */
 	@Override
 	public int compare(String source, String target) {
+		if (source != null && target != null) {
+			int result = compareNumbers(source, target);
+			if (result != UNDECIDED) {
+				return result;
+			}
+		}
 		return collator.compare(expandNumbers(source), expandNumbers(target));
 	}
 
+	/**
+	 * Result of {@link #compareNumbers}, if the comparison could not be decided
+	 * without expanding the strings.
+	 */
+	private final static int UNDECIDED = Integer.MIN_VALUE;
+
+	/**
+	 * Compares two strings in place, if their first difference is in a sequence of
+	 * digits.
+	 * <p>
+	 * The common prefix of the strings does not contribute a difference at any
+	 * collation strength. Digits do not take part in contractions, and they are
+	 * primary collation elements. Thus, if both strings continue with a sequence
+	 * of digits, and these sequences differ, the first primary difference of the
+	 * expanded strings is in the expanded sequences, and it decides the
+	 * comparison: the shorter sequence is smaller, and sequences of the same
+	 * length are ordered by their first differing digit.
+	 *
+	 * @return -1, 0 or 1, or UNDECIDED if the strings need to be expanded.
+	 */
+	private static int compareNumbers(String source, String target) {
+		int n1 = source.length();
+		int n2 = target.length();
+
+		// Skip the common prefix
+		int i = 0;
+		int n = Math.min(n1, n2);
+		while (i < n && source.charAt(i) == target.charAt(i)) {
+			i++;
+		}
+		if (i == n1 && i == n2) {
+			return 0;
+		}
+
+		// Back up to the start of the digit sequence in which the
+		// strings differ.
+		int start = i;
+		while (start > 0 && isDigit(source.charAt(start - 1))) {
+			start--;
+		}
+
+		// Find the end of the digit sequences
+		int end1 = i;
+		while (end1 < n1 && isDigit(source.charAt(end1))) {
+			end1++;
+		}
+		int end2 = i;
+		while (end2 < n2 && isDigit(target.charAt(end2))) {
+			end2++;
+		}
+		int length1 = end1 - start;
+		int length2 = end2 - start;
+		if (length1 == 0 || length2 == 0 || length1 > 999 || length2 > 999) {
+			return UNDECIDED;
+		}
+		if (length1 != length2) {
+			return (length1 < length2) ? -1 : 1;
+		}
+		if (i == end1) {
+			// The digit sequences are equal. The strings differ after them.
+			return UNDECIDED;
+		}
+		return (source.charAt(i) < target.charAt(i)) ? -1 : 1;
+	}
+
+	private static boolean isDigit(char ch) {
+		return ch >= '0' && ch <= '9';
+	}
+
 	@Override
 	public CollationKey getCollationKey(String source) {
 		return collator.getCollationKey(expandNumbers(source));
 	}
 
+	/**
+	 * Returns a copy of this collator. The copy does not share state with this
+	 * collator, so that both can be used by different threads at the same time.
+	 */
+	@Override
+	public Object clone() {
+		OSXCollator that = (OSXCollator) super.clone();
+		that.collator = (Collator) this.collator.clone();
+		return that;
+	}
+
 	@Override
 	public boolean equals(Object o) {
 		if (o instanceof OSXCollator) {
@@ -116,49 +211,43 @@ public class OSXCollator extends Collator {
 			return null;
 		}
 
-		// FIXME - Use StringBuilder here when we abandon support for J2SE 1.4.
-		StringBuffer out = new StringBuffer();
-		StringBuffer digits = new StringBuffer();
+		// Strings without digits are not changed
+		int n = s.length();
+		int i = 0;
+		while (i < n && !isDigit(s.charAt(i))) {
+			i++;
+		}
+		if (i == n) {
+			return s;
+		}
 
-		for (int i = 0, n = s.length(); i < n; i++) {
+		StringBuilder out = new StringBuilder(n + 8);
+		out.append(s, 0, i);
+		while (i < n) {
 			char ch = s.charAt(i);
-			// if (Character.isDigit(ch)) {
-			if (ch >= '0' && ch <= '9') {
-				digits.append(ch);
-			} else {
-				if (digits.length() != 0) {
-					if (digits.length() < 10) {
-						out.append("00");
-						out.append(digits.length());
-					} else if (digits.length() < 100) {
-						out.append("0");
-						out.append(digits.length());
-					} else if (digits.length() < 1000) {
-						out.append(digits.length());
-					} else if (digits.length() > 999) {
-						out.append("999");
-					}
-					out.append(digits.toString());
-					digits.delete(0, digits.length());
+			if (isDigit(ch)) {
+				int start = i;
+				do {
+					i++;
+				} while (i < n && isDigit(s.charAt(i)));
+				int length = i - start;
+				if (length < 10) {
+					out.append("00");
+					out.append(length);
+				} else if (length < 100) {
+					out.append("0");
+					out.append(length);
+				} else if (length < 1000) {
+					out.append(length);
+				} else {
+					out.append("999");
 				}
+				out.append(s, start, i);
+			} else {
 				out.append(ch);
+				i++;
 			}
 		}
-		if (digits.length() != 0) {
-			if (digits.length() < 10) {
-				out.append("00");
-				out.append(digits.length());
-			} else if (digits.length() < 100) {
-				out.append("0");
-				out.append(digits.length());
-			} else if (digits.length() < 1000) {
-				out.append(digits.length());
-			} else if (digits.length() > 999) {
-				out.append("999");
-			}
-			out.append(digits);
-		}
-
 		return out.toString();
 	}
 }
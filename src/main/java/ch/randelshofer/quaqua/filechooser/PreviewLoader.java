@@ -0,0 +1,99 @@
+/*
+ * @(#)PreviewLoader.java
+ *
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package ch.randelshofer.quaqua.filechooser;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+import javax.swing.Timer;
+
+import ch.randelshofer.quaqua.util.Worker;
+
+/**
+ * Loads the preview of a preview panel with a Worker. Only the most recently
+ * requested preview is loaded: When a new preview is requested, the worker of
+ * the previous request is cancelled, and its result is discarded.
+ * <p>
+ * A worker is not started at once, but only after a short delay in which no
+ * other preview has been requested. Thus, when the user moves quickly through
+ * a list of files, no previews are loaded for the files which are only selected
+ * for a moment.
+ * <p>
+ * Workers which read images should use {@link ThumbnailLoader}, which aborts
+ * decoding, when the worker thread is interrupted.
+ * <p>
+ * The methods of this class must be called on the AWT event dispatcher thread.
+ *
+ * @version $Id$
+ */
+public class PreviewLoader {
+	/**
+	 * The default delay in milliseconds before a worker is started.
+	 */
+	public final static int DEFAULT_DELAY = 100;
+
+	private final Timer timer;
+	/**
+	 * The worker of the most recent request, or null.
+	 */
+	private Worker<?> current;
+	/**
+	 * True, if the worker of the most recent request has been started.
+	 */
+	private boolean isStarted;
+
+	/**
+	 * Creates a new PreviewLoader which starts workers after the default delay.
+	 */
+	public PreviewLoader() {
+		this(DEFAULT_DELAY);
+	}
+
+	/**
+	 * Creates a new PreviewLoader.
+	 *
+	 * @param delay The delay in milliseconds before a worker is started.
+	 */
+	public PreviewLoader(int delay) {
+		timer = new Timer(delay, new ActionListener() {
+
+			@Override
+			public void actionPerformed(ActionEvent evt) {
+				if (current != null && !isStarted) {
+					isStarted = true;
+					current.start();
+				}
+			}
+		});
+		timer.setRepeats(false);
+	}
+
+	/**
+	 * Cancels the previous request, and starts the worker after the delay, unless
+	 * another preview is requested in the meantime.
+	 *
+	 * @param worker The worker which loads the preview.
+	 */
+	public void load(Worker<?> worker) {
+		cancel();
+		current = worker;
+		isStarted = false;
+		timer.restart();
+	}
+
+	/**
+	 * Cancels the most recent request. If its worker is running, the worker
+	 * thread is interrupted.
+	 */
+	public void cancel() {
+		timer.stop();
+		if (current != null) {
+			current.cancel();
+			current = null;
+		}
+	}
+}
@@ -12,7 +12,13 @@
 
 package ch.randelshofer.quaqua.filechooser;
 
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
 import java.io.File;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
 
 import javax.swing.Icon;
 import javax.swing.JFileChooser;
@@ -32,11 +38,88 @@ import ch.randelshofer.quaqua.osx.OSXFile;
  * @version $Id$
  */
 public abstract class QuaquaFileSystemView extends FileSystemViewFilter {
+	/**
+	 * The maximal number of icons in the system icon cache.
+	 */
+	private final static int MAX_SYSTEM_ICON_COUNT = 512;
+
+	/**
+	 * Shares the system icons of files of the same kind. Maps the classes of the
+	 * file system views and the keys returned by #getSystemIconKey to icons, the
+	 * most recently used last. The map is shared by all file system views, so that
+	 * the icons are held only once. Access to this map must be synchronized.
+	 */
+	private final static LinkedHashMap<SystemIconKey, Icon> systemIcons = new LinkedHashMap<SystemIconKey, Icon>(16,
+			0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<SystemIconKey, Icon> eldest) {
+			return size() > MAX_SYSTEM_ICON_COUNT;
+		}
+	};
+	private static long systemIconHitCount;
+	private static long systemIconMissCount;
+	/**
+	 * This is set to true, when the listener which clears the system icons has
+	 * been added to the UIManager. Access to this variable must be synchronized
+	 * on the system icons.
+	 */
+	private static boolean isLookAndFeelListenerAdded;
+	private File userHome;
+
+	/**
+	 * The key of a shared system icon.
+	 */
+	private static class SystemIconKey {
+		private final Class<?> viewClass;
+		private final Object key;
+
+		SystemIconKey(Class<?> viewClass, Object key) {
+			this.viewClass = viewClass;
+			this.key = key;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (o instanceof SystemIconKey) {
+				SystemIconKey that = (SystemIconKey) o;
+				return this.viewClass == that.viewClass && this.key.equals(that.key);
+			}
+			return false;
+		}
+
+		@Override
+		public int hashCode() {
+			return viewClass.hashCode() * 31 + key.hashCode();
+		}
+	}
 
 	/**
 	 * Creates a new instance.
 	 */
 	public QuaquaFileSystemView() {
+		String home = QuaquaManager.getProperty("user.home");
+		userHome = (home == null) ? null : new File(home);
+
+		// The icons depend on the look and feel. A single listener is added
+		// for all instances, so that the UIManager does not hold on to them.
+		synchronized (systemIcons) {
+			if (!isLookAndFeelListenerAdded) {
+				isLookAndFeelListenerAdded = true;
+				UIManager.addPropertyChangeListener(new PropertyChangeListener() {
+
+					@Override
+					public void propertyChange(PropertyChangeEvent evt) {
+						if ("lookAndFeel".equals(evt.getPropertyName())) {
+							synchronized (systemIcons) {
+								systemIcons.clear();
+							}
+						}
+					}
+				});
+			}
+		}
 	}
 
 	/**
@@ -46,6 +129,21 @@ public abstract class QuaquaFileSystemView extends FileSystemViewFilter {
 		return f;
 	}
 
+	/**
+	 * Returns whether a file is hidden or not. The provided attributes have been
+	 * read together with the directory listing. Subclasses can use them to avoid
+	 * probing the file system again.
+	 * <p>
+	 * The default implementation ignores the attributes and invokes
+	 * {@link #isHiddenFile(File)}.
+	 *
+	 * @param f     a <code>File</code> object
+	 * @param attrs the basic attributes of the file, or null
+	 */
+	public boolean isHiddenFile(File f, BasicFileAttributes attrs) {
+		return isHiddenFile(f);
+	}
+
 	/**
 	 * Returns the file that represents this computer node.
 	 */
@@ -146,11 +244,125 @@ public abstract class QuaquaFileSystemView extends FileSystemViewFilter {
 			if (OSXFile.canWorkWithAliases()) {
 				return OSXFile.getIcon(f, 16);
 			} else {
-				return target.getSystemIcon(f);
+				return getSharedSystemIcon(f);
 			}
 		}
 	}
 
+	/**
+	 * Returns the icon of the target file system view for the specified file. Files
+	 * of the same kind share the same icon, so that the target is only asked once
+	 * per kind. Files which have an icon of their own are passed to the target
+	 * each time.
+	 *
+	 * @param f a <code>File</code> object
+	 * @return the icon
+	 * @see #getSystemIconKey
+	 */
+	protected Icon getSharedSystemIcon(File f) {
+		Object iconKey = getSystemIconKey(f);
+		SystemIconKey key = (iconKey == null) ? null : new SystemIconKey(getClass(), iconKey);
+		if (key != null) {
+			synchronized (systemIcons) {
+				Icon icon = systemIcons.get(key);
+				if (icon != null) {
+					systemIconHitCount++;
+					return icon;
+				}
+				systemIconMissCount++;
+			}
+		} else {
+			synchronized (systemIcons) {
+				systemIconMissCount++;
+			}
+		}
+
+		Icon icon = target.getSystemIcon(f);
+		if (key != null && icon != null) {
+			synchronized (systemIcons) {
+				systemIcons.put(key, icon);
+			}
+		}
+		return icon;
+	}
+
+	/**
+	 * Returns the key under which the system icon of the specified file is shared
+	 * with other files.
+	 * <p>
+	 * The default implementation returns the same key for all directories and the
+	 * same key for all files with the same extension. It returns null for roots,
+	 * for volumes, and for files for which {@link #hasOwnSystemIcon} returns true.
+	 *
+	 * @param f a <code>File</code> object
+	 * @return the key, or null if the file has an icon of its own.
+	 */
+	protected Object getSystemIconKey(File f) {
+		File parent = f.getParentFile();
+		if (parent == null || parent.getParentFile() == null) {
+			// Roots and volumes
+			return null;
+		}
+		boolean isDirectory = f.isDirectory();
+		String name = f.getName();
+		int p = name.lastIndexOf('.');
+		String extension = (p > 0) ? name.substring(p + 1).toLowerCase(Locale.ENGLISH) : "";
+		if (hasOwnSystemIcon(f, isDirectory, extension)) {
+			return null;
+		}
+		return isDirectory ? "/" : "." + extension;
+	}
+
+	/**
+	 * Returns true, if the specified file has a system icon of its own, which it
+	 * does not share with other files of the same kind.
+	 * <p>
+	 * The default implementation returns true for directories with an extension,
+	 * because they may be packages or applications, and for the directories in the
+	 * home directory of the user, because they may be special folders.
+	 *
+	 * @param f           a <code>File</code> object
+	 * @param isDirectory true, if the file is a directory
+	 * @param extension   the extension of the file in lower case, or an empty
+	 *                    string
+	 */
+	protected boolean hasOwnSystemIcon(File f, boolean isDirectory, String extension) {
+		if (isDirectory) {
+			return extension.length() > 0 || f.getParentFile().equals(userHome) || f.equals(userHome);
+		}
+		return false;
+	}
+
+	/**
+	 * Removes all shared system icons. The system icons are shared by all file
+	 * system views.
+	 */
+	public void clearSystemIconCache() {
+		synchronized (systemIcons) {
+			systemIcons.clear();
+		}
+	}
+
+	/**
+	 * Returns the number of system icons which have been shared with other files
+	 * by all file system views.
+	 */
+	public long getSystemIconHitCount() {
+		synchronized (systemIcons) {
+			return systemIconHitCount;
+		}
+	}
+
+	/**
+	 * Returns the number of system icons which had to be retrieved from the target
+	 * file system views by all file system views.
+	 */
+	public long getSystemIconMissCount() {
+		synchronized (systemIcons) {
+			return systemIconMissCount;
+		}
+	}
+
 	/**
 	 * Type description for a file, directory, or folder as it would be displayed in
 	 * a system file browser. Example from Windows: the "Desktop" folder is desribed
@@ -84,6 +84,16 @@ public class SavedSearchFileSystemTreeModel extends FileSystemTreeModel {
 			return false;
 		}
 
+		@Override
+		protected boolean canScanFiles() {
+			return false;
+		}
+
+		@Override
+		protected boolean canWatch() {
+			return false;
+		}
+
 		@Override
 		protected File[] getFiles() {
 			File savedSearchFile = getFile();
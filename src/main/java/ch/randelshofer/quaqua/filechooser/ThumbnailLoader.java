@@ -0,0 +1,490 @@
+/*
+ * @(#)ThumbnailLoader.java
+ *
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package ch.randelshofer.quaqua.filechooser;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.event.IIOReadProgressListener;
+import javax.imageio.stream.ImageInputStream;
+
+import ch.randelshofer.quaqua.util.ImageScaler;
+
+/**
+ * Loads thumbnail images of image files with ImageIO, and caches them.
+ * <p>
+ * The thumbnails are produced as cheaply as possible:
+ * <ul>
+ * <li>If a JPEG file contains an EXIF thumbnail which is large enough, the
+ * thumbnail is used.</li>
+ * <li>If the ImageReader provides a thumbnail which is large enough, the
+ * thumbnail is used.</li>
+ * <li>Otherwise the image is decoded with source subsampling, so that only
+ * about as many pixels are decoded as are needed for the thumbnail.</li>
+ * </ul>
+ * <p>
+ * The thumbnails are kept in a process wide cache, which is bounded by the
+ * number of bytes of the thumbnails. The cache is keyed by the path, the length
+ * and the modification time of the file, and by the size of the thumbnail. The
+ * least recently used thumbnails are discarded first.
+ * <p>
+ * If a {@link ThumbnailStore} is set, thumbnails which are not in the cache
+ * are read from the store before they are decoded, and decoded thumbnails are
+ * written into the store. By default, the store returned by
+ * {@link ThumbnailStore#getDefault} is used.
+ * <p>
+ * Decoding is aborted, when the current thread is interrupted. The reader
+ * checks the interrupted state of the thread while it reports its progress,
+ * which most readers do after each scanline or tile.
+ * <p>
+ * This class is thread safe.
+ *
+ * @version $Id$
+ */
+public class ThumbnailLoader {
+	/**
+	 * The maximal number of bytes of all cached thumbnails.
+	 */
+	private final static long MAX_CACHE_BYTES = 32L * 1024L * 1024L;
+	/**
+	 * The maximal number of bytes at the start of a JPEG file, which are searched
+	 * for an EXIF thumbnail.
+	 */
+	private final static int MAX_EXIF_SEARCH_BYTES = 256 * 1024;
+
+	/**
+	 * Maps keys to thumbnails, the most recently used last.
+	 */
+	private final static LinkedHashMap<String, BufferedImage> cache = new LinkedHashMap<>(16, 0.75f, true);
+	/**
+	 * The number of bytes of all cached thumbnails.
+	 */
+	private static long cacheBytes;
+	private static long hitCount;
+	private static long missCount;
+	private static ThumbnailStore store = ThumbnailStore.getDefault();
+
+	/**
+	 * Prevent instance creation.
+	 */
+	private ThumbnailLoader() {
+	}
+
+	/**
+	 * Returns the cached thumbnail of the file. This method does not decode images,
+	 * and thus can be called on the AWT event dispatcher thread.
+	 *
+	 * @param file The file.
+	 * @param size The maximal width and height of the thumbnail.
+	 * @return The thumbnail, or null if it is not cached.
+	 */
+	public static BufferedImage getCachedThumbnail(File file, int size) {
+		String key = getKey(file, size);
+		synchronized (cache) {
+			return cache.get(key);
+		}
+	}
+
+	/**
+	 * Returns the thumbnail of the file. The thumbnail is taken from the cache or
+	 * decoded. This method should not be called on the AWT event dispatcher
+	 * thread.
+	 *
+	 * @param file The file.
+	 * @param size The maximal width and height of the thumbnail.
+	 * @return The thumbnail, or null if the file is not an image which can be
+	 *         read with ImageIO, or if the current thread has been interrupted.
+	 */
+	public static BufferedImage getThumbnail(File file, int size) {
+		String key = getKey(file, size);
+		synchronized (cache) {
+			BufferedImage thumbnail = cache.get(key);
+			if (thumbnail != null) {
+				hitCount++;
+				return thumbnail;
+			}
+			missCount++;
+		}
+
+		ThumbnailStore s = getStore();
+		BufferedImage thumbnail = (s == null) ? null : s.get(file, size);
+		if (thumbnail == null) {
+			try {
+				thumbnail = readThumbnail(file, size);
+			} catch (IOException | RuntimeException e) {
+				// The file is not an image, or it is damaged.
+				thumbnail = null;
+			}
+			// An interrupted read may have returned a partially decoded image.
+			if (Thread.currentThread().isInterrupted()) {
+				return null;
+			}
+			if (thumbnail != null && s != null) {
+				s.put(file, size, thumbnail);
+			}
+		}
+
+		if (thumbnail != null) {
+			synchronized (cache) {
+				BufferedImage oldThumbnail = cache.put(key, thumbnail);
+				if (oldThumbnail != null) {
+					cacheBytes -= getByteCount(oldThumbnail);
+				}
+				cacheBytes += getByteCount(thumbnail);
+				Iterator<BufferedImage> i = cache.values().iterator();
+				while (cacheBytes > MAX_CACHE_BYTES && cache.size() > 1) {
+					cacheBytes -= getByteCount(i.next());
+					i.remove();
+				}
+			}
+		}
+		return thumbnail;
+	}
+
+	/**
+	 * Sets the store from which thumbnails are read, and into which decoded
+	 * thumbnails are written.
+	 *
+	 * @param newValue The store, or null if no store shall be used.
+	 */
+	public static void setStore(ThumbnailStore newValue) {
+		synchronized (cache) {
+			store = newValue;
+		}
+	}
+
+	/**
+	 * Returns the store from which thumbnails are read, or null.
+	 */
+	public static ThumbnailStore getStore() {
+		synchronized (cache) {
+			return store;
+		}
+	}
+
+	/**
+	 * Removes all thumbnails from the cache.
+	 */
+	public static void clearCache() {
+		synchronized (cache) {
+			cache.clear();
+			cacheBytes = 0;
+		}
+	}
+
+	/**
+	 * Returns the number of requests which have been served from the cache.
+	 */
+	public static long getHitCount() {
+		synchronized (cache) {
+			return hitCount;
+		}
+	}
+
+	/**
+	 * Returns the number of requests which could not be served from the cache.
+	 */
+	public static long getMissCount() {
+		synchronized (cache) {
+			return missCount;
+		}
+	}
+
+	private static String getKey(File file, int size) {
+		return file.getPath() + '\u0000' + file.length() + '\u0000' + file.lastModified() + '\u0000' + size;
+	}
+
+	private static long getByteCount(BufferedImage img) {
+		return 4L * img.getWidth() * img.getHeight();
+	}
+
+	/**
+	 * Reads the thumbnail of the file.
+	 *
+	 * @return The thumbnail or null.
+	 */
+	private static BufferedImage readThumbnail(File file, int size) throws IOException {
+		if (!file.isFile()) {
+			return null;
+		}
+
+		// Fast path: Use the EXIF thumbnail of a JPEG file
+		BufferedImage img = readExifThumbnail(file, size);
+		if (img != null) {
+			return scaleToFit(img, size);
+		}
+		if (Thread.currentThread().isInterrupted()) {
+			return null;
+		}
+
+		ImageInputStream in = ImageIO.createImageInputStream(file);
+		if (in == null) {
+			return null;
+		}
+		try {
+			Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+			if (!readers.hasNext()) {
+				return null;
+			}
+			final ImageReader reader = readers.next();
+			try {
+				reader.setInput(in, true, true);
+				reader.addIIOReadProgressListener(new IIOReadProgressListener() {
+
+					@Override
+					public void imageProgress(ImageReader source, float percentageDone) {
+						abortIfInterrupted();
+					}
+
+					@Override
+					public void thumbnailProgress(ImageReader source, float percentageDone) {
+						abortIfInterrupted();
+					}
+
+					@Override
+					public void imageStarted(ImageReader source, int imageIndex) {
+						abortIfInterrupted();
+					}
+
+					@Override
+					public void thumbnailStarted(ImageReader source, int imageIndex, int thumbnailIndex) {
+						abortIfInterrupted();
+					}
+
+					@Override
+					public void sequenceStarted(ImageReader source, int minIndex) {
+					}
+
+					@Override
+					public void sequenceComplete(ImageReader source) {
+					}
+
+					@Override
+					public void imageComplete(ImageReader source) {
+					}
+
+					@Override
+					public void thumbnailComplete(ImageReader source) {
+					}
+
+					@Override
+					public void readAborted(ImageReader source) {
+					}
+
+					private void abortIfInterrupted() {
+						if (Thread.currentThread().isInterrupted()) {
+							reader.abort();
+						}
+					}
+				});
+				int width = reader.getWidth(0);
+				int height = reader.getHeight(0);
+
+				// Fast path: Use a thumbnail provided by the reader
+				if (reader.readerSupportsThumbnails()) {
+					for (int i = 0, n = reader.getNumThumbnails(0); i < n; i++) {
+						if (Math.max(reader.getThumbnailWidth(0, i), reader.getThumbnailHeight(0, i)) >= size) {
+							return scaleToFit(reader.readThumbnail(0, i), size);
+						}
+					}
+				}
+
+				if (Thread.currentThread().isInterrupted()) {
+					return null;
+				}
+
+				// Decode only every n-th pixel, so that the decoded image is not
+				// smaller than the thumbnail.
+				ImageReadParam param = reader.getDefaultReadParam();
+				int subsampling = Math.max(1, Math.max(width, height) / size);
+				if (subsampling > 1) {
+					param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+				}
+				img = reader.read(0, param);
+			} finally {
+				reader.dispose();
+			}
+		} finally {
+			in.close();
+		}
+		return (img == null) ? null : scaleToFit(img, size);
+	}
+
+	/**
+	 * Scales the image down, so that it fits into a square with the specified
+	 * size. Images which fit already are converted to an ARGB image, but are not
+	 * scaled.
+	 */
+	private static BufferedImage scaleToFit(BufferedImage img, int size) {
+		int width = img.getWidth();
+		int height = img.getHeight();
+		if (width <= 0 || height <= 0) {
+			return null;
+		}
+		float scale = Math.min(1f, Math.min(size / (float) width, size / (float) height));
+		int scaledWidth = Math.max(1, Math.round(width * scale));
+		int scaledHeight = Math.max(1, Math.round(height * scale));
+		if (scale == 1f && img.getType() == BufferedImage.TYPE_INT_ARGB) {
+			return img;
+		}
+		return ImageScaler.scale(img, scaledWidth, scaledHeight);
+	}
+
+	/**
+	 * Reads the EXIF thumbnail of a JPEG file.
+	 *
+	 * @return The thumbnail, or null if the file is not a JPEG file, if it has no
+	 *         EXIF thumbnail, or if the thumbnail is smaller than the requested
+	 *         size.
+	 */
+	private static BufferedImage readExifThumbnail(File file, int size) throws IOException {
+		byte[] exif;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 8192))) {
+			exif = findExifSegment(in);
+		}
+		if (exif == null) {
+			return null;
+		}
+
+		// The segment starts with "Exif\0\0" followed by a TIFF structure.
+		int tiff = 6;
+		boolean isLittleEndian;
+		if (exif.length < tiff + 8) {
+			return null;
+		} else if (exif[tiff] == 'I' && exif[tiff + 1] == 'I') {
+			isLittleEndian = true;
+		} else if (exif[tiff] == 'M' && exif[tiff + 1] == 'M') {
+			isLittleEndian = false;
+		} else {
+			return null;
+		}
+
+		// Skip IFD0, the thumbnail is described by IFD1.
+		int ifd0 = tiff + readInt(exif, tiff + 4, isLittleEndian);
+		if (ifd0 < tiff || ifd0 + 2 > exif.length) {
+			return null;
+		}
+		int count = readShort(exif, ifd0, isLittleEndian);
+		int next = ifd0 + 2 + count * 12;
+		if (next + 4 > exif.length) {
+			return null;
+		}
+		int ifd1Offset = readInt(exif, next, isLittleEndian);
+		if (ifd1Offset == 0) {
+			return null;
+		}
+		int ifd1 = tiff + ifd1Offset;
+		if (ifd1 < tiff || ifd1 + 2 > exif.length) {
+			return null;
+		}
+
+		int thumbnailOffset = -1;
+		int thumbnailLength = -1;
+		count = readShort(exif, ifd1, isLittleEndian);
+		for (int i = 0; i < count; i++) {
+			int entry = ifd1 + 2 + i * 12;
+			if (entry + 12 > exif.length) {
+				return null;
+			}
+			int tag = readShort(exif, entry, isLittleEndian);
+			if (tag == 0x0201) { // JPEGInterchangeFormat
+				thumbnailOffset = tiff + readInt(exif, entry + 8, isLittleEndian);
+			} else if (tag == 0x0202) { // JPEGInterchangeFormatLength
+				thumbnailLength = readInt(exif, entry + 8, isLittleEndian);
+			}
+		}
+		if (thumbnailOffset < tiff || thumbnailLength <= 0 || thumbnailOffset + thumbnailLength > exif.length) {
+			return null;
+		}
+
+		BufferedImage img = ImageIO.read(new ByteArrayInputStream(exif, thumbnailOffset, thumbnailLength));
+		if (img == null || Math.max(img.getWidth(), img.getHeight()) < size) {
+			return null;
+		}
+		return img;
+	}
+
+	/**
+	 * Reads the JPEG markers up to the start of the image data, and returns the
+	 * first APP1 segment which contains EXIF data.
+	 *
+	 * @return The segment without its marker and length, or null.
+	 */
+	private static byte[] findExifSegment(DataInputStream in) throws IOException {
+		try {
+			if (in.readUnsignedShort() != 0xffd8) { // SOI
+				return null;
+			}
+			int position = 2;
+			while (position < MAX_EXIF_SEARCH_BYTES) {
+				int marker = in.readUnsignedShort();
+				if ((marker & 0xff00) != 0xff00 || marker == 0xffda || marker == 0xffd9) { // SOS, EOI
+					return null;
+				}
+				int length = in.readUnsignedShort() - 2;
+				if (length < 0) {
+					return null;
+				}
+				if (marker == 0xffe1 && length > 6) { // APP1
+					byte[] segment = new byte[length];
+					in.readFully(segment);
+					if (segment[0] == 'E' && segment[1] == 'x' && segment[2] == 'i' && segment[3] == 'f'
+							&& segment[4] == 0 && segment[5] == 0) {
+						return segment;
+					}
+				} else {
+					skipFully(in, length);
+				}
+				position += 4 + length;
+			}
+		} catch (EOFException e) {
+			// The file is truncated
+		}
+		return null;
+	}
+
+	private static void skipFully(InputStream in, long n) throws IOException {
+		while (n > 0) {
+			long skipped = in.skip(n);
+			if (skipped <= 0) {
+				if (in.read() == -1) {
+					throw new EOFException();
+				}
+				skipped = 1;
+			}
+			n -= skipped;
+		}
+	}
+
+	private static int readShort(byte[] b, int off, boolean isLittleEndian) {
+		if (isLittleEndian) {
+			return (b[off] & 0xff) | (b[off + 1] & 0xff) << 8;
+		} else {
+			return (b[off] & 0xff) << 8 | (b[off + 1] & 0xff);
+		}
+	}
+
+	private static int readInt(byte[] b, int off, boolean isLittleEndian) {
+		if (isLittleEndian) {
+			return (b[off] & 0xff) | (b[off + 1] & 0xff) << 8 | (b[off + 2] & 0xff) << 16 | (b[off + 3] & 0xff) << 24;
+		} else {
+			return (b[off] & 0xff) << 24 | (b[off + 1] & 0xff) << 16 | (b[off + 2] & 0xff) << 8 | (b[off + 3] & 0xff);
+		}
+	}
+}
@@ -0,0 +1,423 @@
+/*
+ * @(#)ThumbnailStore.java
+ *
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package ch.randelshofer.quaqua.filechooser;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import ch.randelshofer.quaqua.QuaquaManager;
+
+/**
+ * Stores thumbnails in a directory on disk, so that they survive the restart
+ * of the application.
+ * <p>
+ * Each thumbnail is stored in a file of its own, which holds a small header
+ * and the raw ARGB pixels of the thumbnail. The files are read through memory
+ * mapped buffers. The name of a file is a hash of the canonical path, the
+ * length and the modification time of the image file, and of the size of the
+ * thumbnail. Thus a thumbnail becomes unreachable, as soon as its image file
+ * is modified.
+ * <p>
+ * The store is bounded by the total number of bytes of its files. The
+ * modification time of a file is updated each time the file is read. When the
+ * store has grown beyond its bound, the least recently used files are deleted
+ * on a background thread. Temporary files, which are left over from
+ * interrupted writes, are deleted at the same time.
+ * <p>
+ * This class is thread safe.
+ *
+ * @version $Id$
+ */
+public class ThumbnailStore {
+	/**
+	 * The default maximal number of bytes of the store.
+	 */
+	public final static long DEFAULT_MAX_BYTES = 64L * 1024L * 1024L;
+	/**
+	 * The magic number at the start of each file.
+	 */
+	private final static int MAGIC = 0x51544e31; // "QTN1"
+	private final static int HEADER_SIZE = 12;
+	private final static String SUFFIX = ".argb";
+	/**
+	 * The prefix and the suffix of the temporary files, into which thumbnails
+	 * are written.
+	 */
+	private final static String TEMP_PREFIX = "tmp";
+	private final static String TEMP_SUFFIX = ".part";
+	/**
+	 * Temporary files which are older than this are left over from interrupted
+	 * writes, and are deleted when the store is compacted.
+	 */
+	private final static long STALE_TEMP_FILE_MILLIS = 10L * 60L * 1000L;
+
+	private final File dir;
+	private final long maxBytes;
+	/**
+	 * The number of bytes written since the store was compacted.
+	 */
+	private long writtenBytes;
+	private boolean isCompacting;
+	private long hitCount;
+	private long missCount;
+
+	private static ThumbnailStore defaultStore;
+	private static boolean isDefaultStoreCreated;
+
+	/**
+	 * Thrown by {@link #read}, if a file of the store does not hold a valid
+	 * thumbnail.
+	 */
+	private static class DamagedThumbnailException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		DamagedThumbnailException(String message) {
+			super(message);
+		}
+	}
+
+	/**
+	 * Creates a new store.
+	 *
+	 * @param dir      The directory of the store. The directory is created, when
+	 *                 the first thumbnail is stored.
+	 * @param maxBytes The maximal number of bytes of the store.
+	 */
+	public ThumbnailStore(File dir, long maxBytes) {
+		this.dir = dir;
+		this.maxBytes = maxBytes;
+		// Remove the files of the previous sessions, which do not fit into the
+		// store anymore.
+		compact();
+	}
+
+	/**
+	 * Returns the default store, which is located in the cache directory of the
+	 * user.
+	 * <p>
+	 * The default store is only used, if the property
+	 * "Quaqua.FileChooser.thumbnailStoreEnabled" is set to true.
+	 *
+	 * @return The default store, or null if the store is not enabled.
+	 */
+	public static synchronized ThumbnailStore getDefault() {
+		if (!isDefaultStoreCreated) {
+			isDefaultStoreCreated = true;
+			String userHome = QuaquaManager.getProperty("user.home");
+			if (userHome != null && Boolean
+					.valueOf(QuaquaManager.getProperty("Quaqua.FileChooser.thumbnailStoreEnabled", "false"))) {
+				File userDir = new File(userHome);
+				File cacheDir;
+				if (QuaquaManager.isOSX()) {
+					cacheDir = new File(userDir, "Library/Caches/ch.randelshofer.quaqua/Thumbnails");
+				} else {
+					cacheDir = new File(userDir, ".cache/quaqua/thumbnails");
+				}
+				defaultStore = new ThumbnailStore(cacheDir, DEFAULT_MAX_BYTES);
+			}
+		}
+		return defaultStore;
+	}
+
+	/**
+	 * Returns the directory of the store.
+	 */
+	public File getDirectory() {
+		return dir;
+	}
+
+	/**
+	 * Reads a thumbnail from the store.
+	 *
+	 * @param file The image file.
+	 * @param size The maximal width and height of the thumbnail.
+	 * @return The thumbnail, or null if it is not in the store.
+	 */
+	public BufferedImage get(File file, int size) {
+		File storeFile = getStoreFile(file, size);
+		BufferedImage img = null;
+		if (storeFile != null && storeFile.isFile()) {
+			try {
+				img = read(storeFile);
+			} catch (DamagedThumbnailException e) {
+				// The file is damaged.
+				storeFile.delete();
+			} catch (ClosedByInterruptException e) {
+				// The reading thread has been interrupted. The file is fine.
+				Thread.currentThread().interrupt();
+			} catch (IOException | RuntimeException e) {
+				// We don't care, the thumbnail will be decoded again.
+			}
+		}
+		synchronized (this) {
+			if (img != null) {
+				hitCount++;
+			} else {
+				missCount++;
+			}
+		}
+		if (img != null) {
+			storeFile.setLastModified(System.currentTimeMillis());
+		}
+		return img;
+	}
+
+	/**
+	 * Writes a thumbnail into the store.
+	 *
+	 * @param file The image file.
+	 * @param size The maximal width and height of the thumbnail.
+	 * @param img  The thumbnail.
+	 */
+	public void put(File file, int size, BufferedImage img) {
+		File storeFile = getStoreFile(file, size);
+		if (storeFile == null) {
+			return;
+		}
+		long length;
+		try {
+			length = write(storeFile, img);
+		} catch (ClosedByInterruptException e) {
+			// The writing thread has been interrupted.
+			Thread.currentThread().interrupt();
+			return;
+		} catch (IOException | RuntimeException e) {
+			// We don't care, the thumbnail will be decoded again next time.
+			return;
+		}
+		boolean isCompactionNeeded;
+		synchronized (this) {
+			writtenBytes += length;
+			isCompactionNeeded = writtenBytes > maxBytes / 8;
+		}
+		if (isCompactionNeeded) {
+			compact();
+		}
+	}
+
+	/**
+	 * Deletes all thumbnails of the store.
+	 */
+	public void clear() {
+		File[] files = dir.listFiles();
+		if (files != null) {
+			for (File f : files) {
+				if (f.getName().endsWith(SUFFIX)) {
+					f.delete();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of thumbnails which have been read from the store.
+	 */
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+
+	/**
+	 * Returns the number of thumbnails which could not be read from the store.
+	 */
+	public synchronized long getMissCount() {
+		return missCount;
+	}
+
+	/**
+	 * Deletes the least recently used files on a background thread, until the
+	 * store is within its bound.
+	 */
+	private void compact() {
+		synchronized (this) {
+			if (isCompacting) {
+				return;
+			}
+			isCompacting = true;
+			writtenBytes = 0;
+		}
+		Thread t = new Thread(this + " Compactor") {
+			@Override
+			public void run() {
+				try {
+					doCompact();
+				} finally {
+					synchronized (ThumbnailStore.this) {
+						isCompacting = false;
+					}
+				}
+			}
+		};
+		try {
+			t.setDaemon(true);
+			t.setPriority(Thread.MIN_PRIORITY);
+		} catch (SecurityException e) {
+		}
+		t.start();
+	}
+
+	private void doCompact() {
+		File[] files = dir.listFiles();
+		if (files == null) {
+			return;
+		}
+		final long[] lastModified = new long[files.length];
+		long totalBytes = 0;
+		long staleTime = System.currentTimeMillis() - STALE_TEMP_FILE_MILLIS;
+		Integer[] indices = new Integer[files.length];
+		for (int i = 0; i < files.length; i++) {
+			indices[i] = i;
+			String name = files[i].getName();
+			if (name.endsWith(SUFFIX)) {
+				lastModified[i] = files[i].lastModified();
+				totalBytes += files[i].length();
+			} else if (name.startsWith(TEMP_PREFIX) && name.endsWith(TEMP_SUFFIX)
+					&& files[i].lastModified() < staleTime) {
+				files[i].delete();
+			}
+		}
+		if (totalBytes <= maxBytes) {
+			return;
+		}
+		// Sort by time of last use, the least recently used first
+		Arrays.sort(indices, new Comparator<Integer>() {
+
+			@Override
+			public int compare(Integer o1, Integer o2) {
+				long t1 = lastModified[o1];
+				long t2 = lastModified[o2];
+				return (t1 < t2) ? -1 : ((t1 == t2) ? 0 : 1);
+			}
+		});
+		for (int i = 0; i < indices.length && totalBytes > maxBytes; i++) {
+			File f = files[indices[i]];
+			if (f.getName().endsWith(SUFFIX)) {
+				long length = f.length();
+				if (f.delete()) {
+					totalBytes -= length;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the file of the store which holds the thumbnail of the specified
+	 * image file.
+	 *
+	 * @return The file, or null if the canonical path of the image file can not be
+	 *         determined.
+	 */
+	private File getStoreFile(File file, int size) {
+		String key;
+		try {
+			key = file.getCanonicalPath() + '\u0000' + file.length() + '\u0000' + file.lastModified() + '\u0000'
+					+ size;
+		} catch (IOException | SecurityException e) {
+			return null;
+		}
+		byte[] digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes(StandardCharsets.UTF_8));
+		} catch (NoSuchAlgorithmException e) {
+			throw new InternalError(e);
+		}
+		StringBuilder buf = new StringBuilder(digest.length * 2 + SUFFIX.length());
+		for (byte b : digest) {
+			buf.append(Character.forDigit((b >>> 4) & 0xf, 16));
+			buf.append(Character.forDigit(b & 0xf, 16));
+		}
+		buf.append(SUFFIX);
+		return new File(dir, buf.toString());
+	}
+
+	/**
+	 * Reads a thumbnail from a file of the store.
+	 *
+	 * @throws DamagedThumbnailException if the file does not hold a valid
+	 *                                   thumbnail.
+	 * @throws IOException               if the file can not be read.
+	 */
+	private static BufferedImage read(File storeFile) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(storeFile, "r"); FileChannel channel = raf.getChannel()) {
+			long length = channel.size();
+			if (length < HEADER_SIZE) {
+				throw new DamagedThumbnailException("Truncated thumbnail file " + storeFile);
+			}
+			MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+			int magic = buf.getInt();
+			int width = buf.getInt();
+			int height = buf.getInt();
+			if (magic != MAGIC || width <= 0 || height <= 0 || length != HEADER_SIZE + 4L * width * height) {
+				throw new DamagedThumbnailException("Illegal thumbnail file " + storeFile);
+			}
+			// We must not access the data buffer of the image directly, because
+			// this would prevent Java2D from keeping it in video memory.
+			int[] pixels = new int[width * height];
+			IntBuffer intBuf = buf.asIntBuffer();
+			intBuf.get(pixels);
+			BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+			img.getRaster().setDataElements(0, 0, width, height, pixels);
+			return img;
+		}
+	}
+
+	/**
+	 * Writes the thumbnail into a temporary file and moves the temporary file into
+	 * place, so that readers never see a partially written file.
+	 *
+	 * @return The number of bytes written.
+	 */
+	private long write(File storeFile, BufferedImage img) throws IOException {
+		int width = img.getWidth();
+		int height = img.getHeight();
+		int[] pixels;
+		if (img.getType() == BufferedImage.TYPE_INT_ARGB) {
+			pixels = (int[]) img.getRaster().getDataElements(0, 0, width, height, null);
+		} else {
+			pixels = img.getRGB(0, 0, width, height, null, 0, width);
+		}
+
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Can not create directory " + dir);
+		}
+		File tmpFile = File.createTempFile(TEMP_PREFIX, TEMP_SUFFIX, dir);
+		try {
+			ByteBuffer buf = ByteBuffer.allocate(HEADER_SIZE + 4 * width * height);
+			buf.putInt(MAGIC).putInt(width).putInt(height);
+			buf.asIntBuffer().put(pixels, 0, width * height);
+			buf.rewind();
+			try (RandomAccessFile raf = new RandomAccessFile(tmpFile, "rw");
+					FileChannel channel = raf.getChannel()) {
+				while (buf.hasRemaining()) {
+					channel.write(buf);
+				}
+			}
+			try {
+				Files.move(tmpFile.toPath(), storeFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmpFile.toPath(), storeFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			tmpFile.delete();
+		}
+		return HEADER_SIZE + 4L * width * height;
+	}
+}
@@ -9,6 +9,8 @@
 package ch.randelshofer.quaqua.filechooser;
 
 import java.io.File;
+import java.util.Arrays;
+import java.util.HashSet;
 
 /**
  * WindowsFileSystemView provides a Aqua-style view on the windows file system.
@@ -22,6 +24,11 @@ public class WindowsFileSystemView extends QuaquaFileSystemView {
 	private File volumesFolder;
 	private File desktop;
 	private File systemVolume = new File("C:\\");
+	/**
+	 * The extensions of files which have icons of their own.
+	 */
+	private final static HashSet<String> ownIconExtensions = new HashSet<>(
+			Arrays.asList("exe", "lnk", "url", "ico", "cur", "ani", "scr", "msc", "cpl", "appref-ms"));
 	// private final static boolean DEBUG = false;
 
 	/**
@@ -144,4 +151,18 @@ public class WindowsFileSystemView extends QuaquaFileSystemView {
 		}
 		return false;
 	}
+
+	/**
+	 * Returns true, if the specified file has a system icon of its own. On Windows,
+	 * this is also the case for programs, shortcuts and icon files, and for
+	 * directories which are customized with a desktop.ini file.
+	 */
+	@Override
+	protected boolean hasOwnSystemIcon(File f, boolean isDirectory, String extension) {
+		if (isDirectory) {
+			return super.hasOwnSystemIcon(f, isDirectory, extension) || new File(f, "desktop.ini").isFile();
+		} else {
+			return ownIconExtensions.contains(extension);
+		}
+	}
 }
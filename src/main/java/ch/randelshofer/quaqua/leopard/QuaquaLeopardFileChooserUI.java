@@ -1298,12 +1298,14 @@ public class QuaquaLeopardFileChooserUI extends BasicFileChooserUI implements Su
 	private void doFileSystemViewChanged(PropertyChangeEvent e) {
 		JFileChooser fc = getFileChooser();
 
+		FileSystemTreeModel oldModel = model;
 		model = new FileSystemTreeModel(fc);
 		subtreeModel = new SubtreeTreeModel(model);
 
 		browser.setModel(getTreeModel());
 		sidebarTree.setModel(sidebarTreeModel = new SidebarTreeModel(fc,
 				new TreePath(getFileSystemTreeModel().getRoot()), getFileSystemTreeModel()));
+		oldModel.dispose();
 	}
 
 	private void doPreviewComponentChanged(PropertyChangeEvent e) {
@@ -2016,6 +2016,7 @@ public class QuaquaLionFileChooserUI extends BasicFileChooserUI {
 	}
 
 	private void doFileSystemViewChanged(PropertyChangeEvent e) {
+		FileSystemTreeModel oldModel = fileSystemModel;
 		boolean isInstalled = model == fileSystemModel;
 		fileSystemModel = new FileSystemTreeModel(fc);
 		sidebarTreeModel = new SidebarTreeModel(fc, new TreePath(fileSystemModel.getRoot()), fileSystemModel);
@@ -2024,6 +2025,7 @@ public class QuaquaLionFileChooserUI extends BasicFileChooserUI {
 		if (isInstalled) {
 			installModel(fileSystemModel);
 		}
+		oldModel.dispose();
 	}
 
 	private void ensureFileSystemModel() {
@@ -3500,6 +3502,9 @@ public class QuaquaLionFileChooserUI extends BasicFileChooserUI {
 			if (model != null) {
 				model.setAutoValidate(false);
 				model.stopValidation();
+				if (fileSystemModel != model) {
+					fileSystemModel.stopValidation();
+				}
 				TreePath subtreePath = first(activeView.getSelection());
 				TreePath fullPath = subtreeModel.toFullPath(subtreePath);
 				model.invalidatePath(fullPath);
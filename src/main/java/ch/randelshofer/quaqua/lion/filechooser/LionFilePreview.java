@@ -16,11 +16,13 @@ import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.FontMetrics;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
 import java.awt.Insets;
 import java.awt.Rectangle;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
+import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.text.DateFormat;
@@ -53,8 +55,11 @@ import javax.swing.tree.TreePath;
 import ch.randelshofer.quaqua.BrowserPreviewRenderer;
 import ch.randelshofer.quaqua.JBrowser;
 import ch.randelshofer.quaqua.filechooser.FileInfo;
+import ch.randelshofer.quaqua.filechooser.PreviewLoader;
 import ch.randelshofer.quaqua.filechooser.QuaquaFileSystemView;
+import ch.randelshofer.quaqua.filechooser.ThumbnailLoader;
 import ch.randelshofer.quaqua.osx.OSXFile;
+import ch.randelshofer.quaqua.util.ImageScaler;
 import ch.randelshofer.quaqua.util.Worker;
 
 /**
@@ -76,6 +81,13 @@ public class LionFilePreview extends JPanel implements BrowserPreviewRenderer {
 	private Font valueFont;
 	private String labelDelimiter;
 	private ScaledImageView previewImageView;
+	private final PreviewLoader previewLoader = new PreviewLoader();
+	/**
+	 * The maximal width and height of the preview image. This is twice the size of
+	 * the preview image view, so that the image is sharp on high resolution
+	 * displays.
+	 */
+	private final static int PREVIEW_IMAGE_SIZE = 256;
 
 	public LionFilePreview(JFileChooser fileChooser) {
 		this.fileChooser = fileChooser;
@@ -345,17 +357,31 @@ public class LionFilePreview extends JPanel implements BrowserPreviewRenderer {
 	private void updatePreviewImage() {
 		previewImageView.setVisible(isFileIconAvailable);
 		previewImageView.setImage(null);
+		previewLoader.cancel();
 
 		if (info != null) {
-			// Retrieving the file icon requires some potentially lengthy I/O
-			// operations. Therefore we do this in a worker thread.
 			final File file = info.lazyGetResolvedFile();
 			if (file != null) {
-				new Worker<BufferedImage>() {
+				// Show a cached thumbnail at once.
+				BufferedImage thumbnail = ThumbnailLoader.getCachedThumbnail(file, PREVIEW_IMAGE_SIZE);
+				if (thumbnail != null) {
+					isFileIconAvailable = true;
+					previewImageView.setVisible(true);
+					previewImageView.setImage(thumbnail);
+					return;
+				}
+
+				// Retrieving the file icon requires some potentially lengthy I/O
+				// operations. Therefore we do this in a worker thread. The worker
+				// is cancelled, when another file is selected.
+				previewLoader.load(new Worker<BufferedImage>() {
 
 					@Override
 					public BufferedImage construct() {
-						BufferedImage o = null;
+						BufferedImage o = ThumbnailLoader.getThumbnail(file, PREVIEW_IMAGE_SIZE);
+						if (o != null || isCancelled()) {
+							return o;
+						}
 						if (UIManager.getBoolean("FileChooser.quickLookEnabled")
 								&& System.getProperty("os.version").compareTo("10.6") >= 0) {
 							o = OSXFile.getQuickLookThumbnailImage(file, 800);
@@ -378,7 +404,7 @@ public class LionFilePreview extends JPanel implements BrowserPreviewRenderer {
 						}
 						previewImageView.getParent().validate();
 					}
-				}.start();
+				});
 			}
 		}
 	}
@@ -541,13 +567,35 @@ public class LionFilePreview extends JPanel implements BrowserPreviewRenderer {
 		}
 	}
 
+	/**
+	 * Shows an image scaled to fit into the component. The view keeps a copy of
+	 * the image, which is scaled to the size of the component in device pixels.
+	 * The copy is rebuilt on a worker thread, when the image or the size of the
+	 * component changes. In the meantime, the image is scaled when it is painted.
+	 */
 	private static class ScaledImageView extends JComponent {
 		private static final long serialVersionUID = 1L;
 		private BufferedImage im;
+		/**
+		 * The image scaled to the size in device pixels, at which it was last
+		 * painted, or null.
+		 */
+		private BufferedImage scaledImage;
+		/**
+		 * The size in device pixels of the scaled image, which is currently being
+		 * built.
+		 */
+		private int requestedWidth, requestedHeight;
+		private final PreviewLoader scaler = new PreviewLoader(50);
 
 		public void setImage(BufferedImage im) {
-			this.im = im;
-			repaint();
+			if (this.im != im) {
+				this.im = im;
+				scaledImage = null;
+				requestedWidth = requestedHeight = 0;
+				scaler.cancel();
+				repaint();
+			}
 		}
 
 		@Override
@@ -565,14 +613,64 @@ public class LionFilePreview extends JPanel implements BrowserPreviewRenderer {
 				int cheight = getHeight() - s.top - s.bottom;
 				float imwidth = im.getWidth();
 				float imheight = im.getHeight();
-				if (imwidth > 0 && imheight > 0) {
-					int size = Math.min(cwidth, cheight);
+				if (imwidth > 0 && imheight > 0 && cwidth > 0 && cheight > 0) {
 					float scale = Math.min(cwidth / imwidth, cheight / imheight);
-					int extraLeft = (int) Math.max(0, (cwidth - imwidth * scale) / 2);
-					int extraTop = (int) Math.max(0, (cheight - imheight * scale) / 2);
-					g.drawImage(im, left + extraLeft, top + extraTop, size, size, null);
+					int width = Math.max(1, Math.round(imwidth * scale));
+					int height = Math.max(1, Math.round(imheight * scale));
+					int x = left + (cwidth - width) / 2;
+					int y = top + (cheight - height) / 2;
+
+					// Determine the size in device pixels
+					double deviceScaleX = 1d, deviceScaleY = 1d;
+					if (g instanceof Graphics2D) {
+						AffineTransform tx = ((Graphics2D) g).getTransform();
+						deviceScaleX = Math.max(1d, Math.abs(tx.getScaleX()));
+						deviceScaleY = Math.max(1d, Math.abs(tx.getScaleY()));
+					}
+					int deviceWidth = (int) Math.ceil(width * deviceScaleX);
+					int deviceHeight = (int) Math.ceil(height * deviceScaleY);
+
+					BufferedImage img;
+					if (im.getWidth() == deviceWidth && im.getHeight() == deviceHeight) {
+						img = im;
+					} else if (scaledImage != null && scaledImage.getWidth() == deviceWidth
+							&& scaledImage.getHeight() == deviceHeight) {
+						img = scaledImage;
+					} else {
+						img = im;
+						requestScaledImage(deviceWidth, deviceHeight);
+					}
+					g.drawImage(img, x, y, width, height, null);
 				}
 			}
 		}
+
+		/**
+		 * Builds the scaled image on a worker thread, and repaints the view when it
+		 * is done.
+		 */
+		private void requestScaledImage(final int deviceWidth, final int deviceHeight) {
+			if (deviceWidth == requestedWidth && deviceHeight == requestedHeight) {
+				return;
+			}
+			requestedWidth = deviceWidth;
+			requestedHeight = deviceHeight;
+			final BufferedImage source = im;
+			scaler.load(new Worker<BufferedImage>() {
+
+				@Override
+				protected BufferedImage construct() {
+					return ImageScaler.scale(source, deviceWidth, deviceHeight);
+				}
+
+				@Override
+				protected void done(BufferedImage value) {
+					if (source == im) {
+						scaledImage = value;
+						repaint();
+					}
+				}
+			});
+		}
 	}
 }
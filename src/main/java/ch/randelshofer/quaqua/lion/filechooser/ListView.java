@@ -411,7 +411,8 @@ public class ListView extends ch.randelshofer.quaqua.filechooser.ListView {
 			case 0:
 				return pn; // expected by our file renderer
 			case 1:
-				return f != null ? getModifiedString(f, tableColumnModel.dateModifiedColumn.getWidth()) : "";
+				return f != null ? getModifiedString(pn.getLastModified(), tableColumnModel.dateModifiedColumn.getWidth())
+						: "";
 			case 2:
 				return getLengthString(pn.getFileLength());
 			case 3:
@@ -449,19 +450,23 @@ public class ListView extends ch.randelshofer.quaqua.filechooser.ListView {
 
 	protected String getModifiedString(File f, int width) {
 		if (f != null) {
-			Date d = new Date(f.lastModified());
-			if (width < 150) {
-				DateFormat df = DateFormat.getDateInstance(DateFormat.SHORT);
-				return df.format(d);
-			} else {
-				DateFormat df = DateFormat.getDateInstance();
-				return df.format(d);
-			}
+			return getModifiedString(f.lastModified(), width);
 		} else {
 			return "";
 		}
 	}
 
+	protected String getModifiedString(long lastModified, int width) {
+		Date d = new Date(lastModified);
+		if (width < 150) {
+			DateFormat df = DateFormat.getDateInstance(DateFormat.SHORT);
+			return df.format(d);
+		} else {
+			DateFormat df = DateFormat.getDateInstance();
+			return df.format(d);
+		}
+	}
+
 	protected String getKindString(File f) {
 		return f != null ? OSXFile.getKindString(f) : "";
 	}
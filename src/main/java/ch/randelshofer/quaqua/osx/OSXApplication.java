@@ -7,17 +7,16 @@
  */
 package ch.randelshofer.quaqua.osx;
 
-import java.awt.Image;
 import java.awt.image.BufferedImage;
 import java.awt.image.RenderedImage;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 
 import ch.randelshofer.quaqua.QuaquaIconFactory;
 import ch.randelshofer.quaqua.QuaquaManager;
 import ch.randelshofer.quaqua.ext.batik.ext.awt.image.codec.tiff.TIFFDecodeParam;
 import ch.randelshofer.quaqua.ext.batik.ext.awt.image.codec.tiff.TIFFImageDecoder;
-import ch.randelshofer.quaqua.ext.batik.ext.awt.image.codec.util.MemoryCacheSeekableStream;
+import ch.randelshofer.quaqua.ext.batik.ext.awt.image.codec.util.ByteBufferSeekableStream;
+import ch.randelshofer.quaqua.util.ImageScaler;
 import ch.randelshofer.quaqua.util.Images;
 import ch.randelshofer.quaqua.util.Methods;
 
@@ -114,8 +113,10 @@ public class OSXApplication {
 					tiffData = nativeGetIconImage(size);
 				}
 
+				TIFFDecodeParam param = new TIFFDecodeParam();
+				param.setParallelDecoding(true);
 				TIFFImageDecoder decoder = new TIFFImageDecoder(
-						new MemoryCacheSeekableStream(new ByteArrayInputStream(tiffData)), new TIFFDecodeParam());
+						new ByteBufferSeekableStream(tiffData), param);
 
 				RenderedImage rImg = decoder.decodeAsRenderedImage(0);
 				image = Images.toBufferedImage(rImg);
@@ -140,7 +141,7 @@ public class OSXApplication {
 		}
 
 		if (image.getWidth() != size) {
-			image = Images.toBufferedImage(image.getScaledInstance(size, size, Image.SCALE_SMOOTH));
+			image = ImageScaler.scale(image, size, size);
 		}
 
 		return image;
@@ -13,10 +13,11 @@ import java.awt.image.BufferedImage;
 import java.awt.image.Raster;
 import java.awt.image.RenderedImage;
 import java.awt.image.WritableRaster;
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.Charset;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.DosFileAttributes;
 import java.util.Date;
 
 import javax.swing.Icon;
@@ -27,8 +28,8 @@ import ch.randelshofer.quaqua.QuaquaManager;
 import ch.randelshofer.quaqua.QuaquaUtilities;
 import ch.randelshofer.quaqua.ext.batik.ext.awt.image.codec.tiff.TIFFDecodeParam;
 import ch.randelshofer.quaqua.ext.batik.ext.awt.image.codec.tiff.TIFFImageDecoder;
-import ch.randelshofer.quaqua.ext.batik.ext.awt.image.codec.util.MemoryCacheSeekableStream;
-import ch.randelshofer.quaqua.util.Images;
+import ch.randelshofer.quaqua.ext.batik.ext.awt.image.codec.util.ByteBufferSeekableStream;
+import ch.randelshofer.quaqua.util.ImageScaler;
 
 /**
  * {@code OSXFile} provides access to Mac OS X file meta data and can resolve
@@ -401,8 +402,10 @@ public class OSXFile {
 					return null;
 				}
 
+				TIFFDecodeParam param = new TIFFDecodeParam();
+				param.setParallelDecoding(true);
 				TIFFImageDecoder decoder = new TIFFImageDecoder(
-						new MemoryCacheSeekableStream(new ByteArrayInputStream(tiffData)), new TIFFDecodeParam());
+						new ByteBufferSeekableStream(tiffData), param);
 
 				RenderedImage rImg = decoder.decodeAsRenderedImage(0);
 				BufferedImage image;
@@ -410,15 +413,15 @@ public class OSXFile {
 				if (rImg instanceof BufferedImage) {
 					image = (BufferedImage) rImg;
 				} else {
-					Raster r = rImg.getData();
-					WritableRaster wr = Raster.createWritableRaster(r.getSampleModel(), null);
+					WritableRaster wr = Raster.createWritableRaster(
+							rImg.getSampleModel().createCompatibleSampleModel(rImg.getWidth(), rImg.getHeight()), null);
 					rImg.copyData(wr);
 					image = new BufferedImage(rImg.getColorModel(), wr, rImg.getColorModel().isAlphaPremultiplied(),
 							null);
 
 				} // Scale the image
 				if (image.getWidth() != size) {
-					image = Images.toBufferedImage(image.getScaledInstance(size, size, Image.SCALE_SMOOTH));
+					image = ImageScaler.scale(image, size, size);
 
 				}
 				return image;
@@ -452,8 +455,10 @@ public class OSXFile {
 
 				}
 
+				TIFFDecodeParam param = new TIFFDecodeParam();
+				param.setParallelDecoding(true);
 				TIFFImageDecoder decoder = new TIFFImageDecoder(
-						new MemoryCacheSeekableStream(new ByteArrayInputStream(tiffData)), new TIFFDecodeParam());
+						new ByteBufferSeekableStream(tiffData), param);
 
 				RenderedImage rImg = decoder.decodeAsRenderedImage(0);
 				BufferedImage image;
@@ -462,8 +467,8 @@ public class OSXFile {
 					image = (BufferedImage) rImg;
 
 				} else {
-					Raster r = rImg.getData();
-					WritableRaster wr = Raster.createWritableRaster(r.getSampleModel(), null);
+					WritableRaster wr = Raster.createWritableRaster(
+							rImg.getSampleModel().createCompatibleSampleModel(rImg.getWidth(), rImg.getHeight()), null);
 					rImg.copyData(wr);
 					image = new BufferedImage(rImg.getColorModel(), wr, rImg.getColorModel().isAlphaPremultiplied(),
 							null);
@@ -545,6 +550,27 @@ public class OSXFile {
 		return false;
 	}
 
+	/**
+	 * Returns true if the file is invisible. If native code is not available, the
+	 * provided attributes are used instead of probing the file system again. On
+	 * file systems without a hidden attribute, files starting with '.' are
+	 * invisible.
+	 *
+	 * @param file  The file.
+	 * @param attrs The basic attributes of the file, or null if they have not been
+	 *              read.
+	 */
+	public static boolean isInvisible(File file, BasicFileAttributes attrs) {
+		if (file != null && attrs != null && !isNativeCodeAvailable()) {
+			if (attrs instanceof DosFileAttributes) {
+				return ((DosFileAttributes) attrs).isHidden();
+			} else {
+				return file.getName().startsWith(".");
+			}
+		}
+		return isInvisible(file);
+	}
+
 	public static boolean isTraversable(File file) {
 		return isTraversable(file, false, false);
 	}
@@ -13,7 +13,6 @@ package ch.randelshofer.quaqua.osx;
 import java.awt.image.BufferedImage;
 import java.awt.image.BufferedImageOp;
 import java.awt.image.RenderedImage;
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 
@@ -23,7 +22,7 @@ import com.twelvemonkeys.image.ResampleOp;
 
 import ch.randelshofer.quaqua.ext.batik.ext.awt.image.codec.tiff.TIFFDecodeParam;
 import ch.randelshofer.quaqua.ext.batik.ext.awt.image.codec.tiff.TIFFImageDecoder;
-import ch.randelshofer.quaqua.ext.batik.ext.awt.image.codec.util.MemoryCacheSeekableStream;
+import ch.randelshofer.quaqua.ext.batik.ext.awt.image.codec.util.ByteBufferSeekableStream;
 import ch.randelshofer.quaqua.util.Images;
 
 /**
@@ -123,11 +122,26 @@ public class OSXImageIO {
 		return decodeTIFF(tiffData);
 	}
 
+	/**
+	 * Reads a <code>BufferedImage</code> from the supplied TIFF <code>File</code>.
+	 * This method does not need native code. The file is mapped into memory, so
+	 * that only the decoded image is held on the heap.
+	 */
+	public static BufferedImage readTIFF(File file) throws IOException {
+		return decodeTIFF(ByteBufferSeekableStream.map(file));
+	}
+
 	/** Decodes a byte array with a TIFF encoded image. */
 	private static BufferedImage decodeTIFF(byte[] tiffData) throws IOException {
+		return decodeTIFF(new ByteBufferSeekableStream(tiffData));
+	}
+
+	/** Decodes a stream with a TIFF encoded image. */
+	private static BufferedImage decodeTIFF(ByteBufferSeekableStream tiffStream) throws IOException {
 
-		TIFFImageDecoder decoder = new TIFFImageDecoder(
-				new MemoryCacheSeekableStream(new ByteArrayInputStream(tiffData)), new TIFFDecodeParam());
+		TIFFDecodeParam param = new TIFFDecodeParam();
+		param.setParallelDecoding(true);
+		TIFFImageDecoder decoder = new TIFFImageDecoder(tiffStream, param);
 
 		RenderedImage rImg = decoder.decodeAsRenderedImage(0);
 		return Images.toBufferedImage(rImg);
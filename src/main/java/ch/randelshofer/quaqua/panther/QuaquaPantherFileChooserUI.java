@@ -1231,12 +1231,14 @@ public class QuaquaPantherFileChooserUI extends BasicFileChooserUI implements Su
 	private void doFileSystemViewChanged(PropertyChangeEvent e) {
 		JFileChooser fc = getFileChooser();
 
+		FileSystemTreeModel oldModel = model;
 		model = new FileSystemTreeModel(fc);
 		subtreeModel = new SubtreeTreeModel(model);
 
 		browser.setModel(getTreeModel());
 		sidebarList.setModel(sidebarListModel = new SidebarListModel(fc,
 				new TreePath(getFileSystemTreeModel().getRoot()), getFileSystemTreeModel()));
+		oldModel.dispose();
 	}
 
 	private void doPreviewComponentChanged(PropertyChangeEvent e) {
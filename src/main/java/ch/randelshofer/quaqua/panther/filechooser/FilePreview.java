@@ -44,7 +44,9 @@ import ch.randelshofer.quaqua.JBrowser;
 import ch.randelshofer.quaqua.QuaquaLookAndFeel;
 import ch.randelshofer.quaqua.filechooser.FileInfo;
 import ch.randelshofer.quaqua.filechooser.FileSystemTreeModel;
+import ch.randelshofer.quaqua.filechooser.PreviewLoader;
 import ch.randelshofer.quaqua.filechooser.QuaquaFileSystemView;
+import ch.randelshofer.quaqua.filechooser.ThumbnailLoader;
 import ch.randelshofer.quaqua.osx.OSXFile;
 import ch.randelshofer.quaqua.util.Worker;
 
@@ -78,6 +80,7 @@ public class FilePreview extends JPanel implements BrowserPreviewRenderer {
 	private boolean isFileIconAvailable = true;
 	private JPanel emptyPreview;
 	private FileInfo info;
+	private final PreviewLoader previewLoader = new PreviewLoader();
 
 	/** Creates new form. */
 	public FilePreview(JFileChooser fileChooser) {
@@ -477,17 +480,31 @@ public class FilePreview extends JPanel implements BrowserPreviewRenderer {
 	private void updatePreviewIcon() {
 		previewLabel.setVisible(isFileIconAvailable && previewCheckBox.isSelected());
 		previewLabel.setIcon(placeholderIcon);
+		previewLoader.cancel();
 
 		if (info != null && previewCheckBox.isSelected()) {
 			// Retrieving the file icon requires some potentially lengthy I/O
-			// operations. Therefore we do this in a worker thread.
+			// operations. Therefore we do this in a worker thread. The worker
+			// is cancelled, when another file is selected.
 			final File file = info.lazyGetResolvedFile();
 			if (file != null) {
-				new Worker<Image>() {
+				// Show a cached thumbnail at once.
+				Image thumbnail = ThumbnailLoader.getCachedThumbnail(file, 128);
+				if (thumbnail != null) {
+					isFileIconAvailable = true;
+					previewLabel.setVisible(true);
+					previewLabel.setIcon(new ImageIcon(thumbnail));
+					return;
+				}
+
+				previewLoader.load(new Worker<Image>() {
 
 					@Override
 					public Image construct() {
-						Image o = null;
+						Image o = ThumbnailLoader.getThumbnail(file, 128);
+						if (o != null || isCancelled()) {
+							return o;
+						}
 						if (UIManager.getBoolean("FileChooser.quickLookEnabled")
 								&& System.getProperty("os.version").compareTo("10.6") >= 0) {
 							o = OSXFile.getQuickLookThumbnailImage(file, 128);
@@ -510,7 +527,7 @@ public class FilePreview extends JPanel implements BrowserPreviewRenderer {
 						}
 						previewLabel.getParent().validate();
 					}
-				}.start();
+				});
 			}
 		}
 	}
@@ -9,6 +9,7 @@
 package ch.randelshofer.quaqua.tiger.filechooser;
 
 import java.io.File;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.Arrays;
 
 import ch.randelshofer.quaqua.filechooser.BasicOSXFileSystemView;
@@ -43,13 +44,13 @@ public class OSXTigerFileSystemView extends BasicOSXFileSystemView {
 	 * Returns whether a file is hidden or not.
 	 */
 	@Override
-	public boolean isHiddenFile(File f) {
+	public boolean isHiddenFile(File f, BasicFileAttributes attrs) {
 
 		/*
 		 * Does not test for file names starting with '.'. Is this intentional?
 		 */
 
-		if (OSXFile.isInvisible(f)) {
+		if (OSXFile.isInvisible(f, attrs)) {
 			return true;
 		} else {
 			String name = f.getName();
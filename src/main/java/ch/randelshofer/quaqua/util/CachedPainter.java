@@ -13,10 +13,11 @@ import java.awt.GraphicsConfiguration;
 import java.awt.Image;
 import java.awt.image.BufferedImage;
 import java.awt.image.VolatileImage;
-import java.lang.ref.SoftReference;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A base class used for icons or images that are expensive to paint. A subclass
@@ -30,6 +31,14 @@ import java.util.Map;
  * lives here is equivalent to what previously would go in
  * <code>paintIcon</code>, for an <code>Icon</code>.
  * </ol>
+ * Images are cached per painter instance, and are looked up by graphics
+ * configuration, size and args in a hash map. Each painter caches up to
+ * <code>cacheCount</code> images. In addition, the number of pixels of all
+ * cached images is bounded by a global budget. When a painter or the budget
+ * exceed their limit, the least recently used images are evicted.
+ * <p>
+ * This class is thread safe.
+ * <p>
  * This class has been derived from javax.swing.plaf.metal.CachedPainter 1.2
  * 04/02/15
  * 
@@ -37,57 +46,73 @@ import java.util.Map;
  * @version $Id$
  */
 public abstract class CachedPainter {
-	// CacheMap maps from class to Cache.
-
-	private static final Map cacheMap = new HashMap();
+	/**
+	 * The default maximal number of pixels of all cached images.
+	 */
+	public final static long DEFAULT_MAX_CACHED_PIXELS = 4L * 1024L * 1024L;
+
+	/** All entries of all painters, needed to enforce the budget. */
+	private static final Set<Entry> allEntries = ConcurrentHashMap.newKeySet();
+	/** The number of pixels of all cached images. */
+	private static final AtomicLong cachedPixels = new AtomicLong();
+	/** The clock used to determine the least recently used entries. */
+	private static final AtomicLong clock = new AtomicLong();
+	private static final AtomicLong hitCount = new AtomicLong();
+	private static final AtomicLong missCount = new AtomicLong();
+	private static final AtomicLong evictionCount = new AtomicLong();
+	private static volatile long maxCachedPixels = DEFAULT_MAX_CACHED_PIXELS;
+
+	/** The cached images of this painter. */
+	private final ConcurrentHashMap<Key, Entry> entries = new ConcurrentHashMap<Key, Entry>();
+	/** The maximal number of images cached by this painter. */
+	private final int cacheCount;
 	private int maxCachedImageSize = 20000;
 
-	private static Cache getCache(Object key) {
-		synchronized (cacheMap) {
-			Cache cache = (Cache) cacheMap.get(key);
-			if (cache == null) {
-				cache = new Cache(1);
-				cacheMap.put(key, cache);
-			}
-			return cache;
-		}
-	}
-
 	/**
 	 * Creates an instance of <code>CachedPainter</code> that will cache up to
-	 * <code>cacheCount</code> images of this class.
+	 * <code>cacheCount</code> images.
 	 * 
 	 * @param cacheCount Max number of images to cache
 	 */
 	public CachedPainter(int cacheCount) {
-		getCache(getClass()).setMaxCount(cacheCount);
+		this.cacheCount = cacheCount;
 	}
 
 	/**
 	 * Renders the cached image to the the passed in <code>Graphic</code>. If there
 	 * is no cached image <code>paintToImage</code> will be invoked.
 	 * <code>paintImage</code> is invoked to paint the cached image.
+	 * <p>
+	 * The component may be null. The image is then created without a graphics
+	 * configuration.
 	 */
 	protected void paint(Component c, Graphics g, int x, int y, int w, int h, Object args) {
 		if (w <= 0 || h <= 0) {
 			return;
 		}
 
-		Object key = getClass();
-
 		// If the area is larger than 20'000 pixels, render to the passed
 		// in Graphics. 20'000 pixels is a bit larger than a rectangle of
 		// 160*120 points.
-		if (getCache(key).getMaxCount() == 0 || w * h > maxCachedImageSize) {
+		if (cacheCount == 0 || w * h > maxCachedImageSize) {
 			g.translate(x, y);
 			paintToImage(c, g, w, h, args);
 			g.translate(-x, -y);
 			return;
 		}
 
-		GraphicsConfiguration config = c.getGraphicsConfiguration();
-		Cache cache = getCache(key);
-		Image image = cache.getImage(key, config, w, h, args);
+		GraphicsConfiguration config = (c == null) ? null : c.getGraphicsConfiguration();
+		Key key = new Key(config, w, h, args);
+		Entry entry = entries.get(key);
+		Image image;
+		if (entry != null) {
+			entry.lastUse = clock.incrementAndGet();
+			hitCount.incrementAndGet();
+			image = entry.image;
+		} else {
+			missCount.incrementAndGet();
+			image = null;
+		}
 		int attempts = 0;
 		do {
 			boolean draw = false;
@@ -106,12 +131,14 @@ public abstract class CachedPainter {
 			if (image == null) {
 				// Recreate the image
 				image = createImage(c, w, h, config);
-				cache.setImage(key, config, w, h, args, image);
 				draw = true;
 			}
 			if (draw) {
 				// Render to the Image
 				paintToImage(c, image, w, h, args);
+				if (entry == null || entry.image != image) {
+					entry = put(key, image);
+				}
 			}
 
 			// Render to the passed in Graphics
@@ -123,6 +150,152 @@ public abstract class CachedPainter {
 		} while ((image instanceof VolatileImage) && ((VolatileImage) image).contentsLost() && ++attempts < 3);
 	}
 
+	/**
+	 * Puts an image into the cache, and evicts the least recently used images,
+	 * if this painter or the global budget exceed their limit.
+	 */
+	private Entry put(Key key, Image image) {
+		int iw = image.getWidth(null);
+		int ih = image.getHeight(null);
+		long pixels = (iw > 0 && ih > 0) ? (long) iw * ih : (long) key.w * key.h;
+		Entry entry = new Entry(this, key, image, pixels);
+		entry.lastUse = clock.incrementAndGet();
+
+		allEntries.add(entry);
+		cachedPixels.addAndGet(pixels);
+		Entry old = entries.put(key, entry);
+		if (old != null) {
+			discard(old);
+		}
+
+		// Evict the least recently used image of this painter
+		while (entries.size() > cacheCount) {
+			Entry lru = null;
+			for (Entry e : entries.values()) {
+				if (lru == null || e.lastUse < lru.lastUse) {
+					lru = e;
+				}
+			}
+			if (lru == null || lru == entry) {
+				break;
+			}
+			evict(lru);
+		}
+
+		if (cachedPixels.get() > maxCachedPixels) {
+			evictGlobally();
+		}
+		return entry;
+	}
+
+	/**
+	 * Evicts the least recently used images of all painters, until the cached
+	 * pixels are down to three quarters of the budget.
+	 */
+	private static void evictGlobally() {
+		synchronized (allEntries) {
+			long limit = maxCachedPixels * 3 / 4;
+			if (cachedPixels.get() <= limit) {
+				return;
+			}
+			Entry[] lru = allEntries.toArray(new Entry[0]);
+			for (int i = 0; i < lru.length; i++) {
+				// Take a snapshot, because the times may change while we sort
+				lru[i].sortKey = lru[i].lastUse;
+			}
+			Arrays.sort(lru, new Comparator<Entry>() {
+
+				@Override
+				public int compare(Entry o1, Entry o2) {
+					return (o1.sortKey < o2.sortKey) ? -1 : ((o1.sortKey == o2.sortKey) ? 0 : 1);
+				}
+			});
+			for (int i = 0; i < lru.length && cachedPixels.get() > limit; i++) {
+				evict(lru[i]);
+			}
+		}
+	}
+
+	/**
+	 * Removes an entry from the cache of its painter.
+	 */
+	private static void evict(Entry entry) {
+		if (entry.owner.entries.remove(entry.key, entry)) {
+			evictionCount.incrementAndGet();
+			discard(entry);
+		}
+	}
+
+	/**
+	 * Releases an entry, which has been removed from the cache of its painter.
+	 */
+	private static void discard(Entry entry) {
+		if (allEntries.remove(entry)) {
+			cachedPixels.addAndGet(-entry.pixels);
+			if (entry.image instanceof VolatileImage) {
+				entry.image.flush();
+			}
+		}
+	}
+
+	/**
+	 * Removes all cached images of all painters.
+	 */
+	public static void clearCache() {
+		for (Entry entry : allEntries.toArray(new Entry[0])) {
+			if (entry.owner.entries.remove(entry.key, entry)) {
+				discard(entry);
+			}
+		}
+	}
+
+	/**
+	 * Sets the maximal number of pixels of all cached images. The default value
+	 * is {@link #DEFAULT_MAX_CACHED_PIXELS}.
+	 */
+	public static void setMaxCachedPixels(long newValue) {
+		maxCachedPixels = newValue;
+		if (cachedPixels.get() > newValue) {
+			evictGlobally();
+		}
+	}
+
+	/**
+	 * Returns the maximal number of pixels of all cached images.
+	 */
+	public static long getMaxCachedPixels() {
+		return maxCachedPixels;
+	}
+
+	/**
+	 * Returns the number of pixels of all cached images.
+	 */
+	public static long getCachedPixels() {
+		return cachedPixels.get();
+	}
+
+	/**
+	 * Returns the number of times a cached image has been painted.
+	 */
+	public static long getHitCount() {
+		return hitCount.get();
+	}
+
+	/**
+	 * Returns the number of times an image had to be rendered, because it was not
+	 * in the cache.
+	 */
+	public static long getMissCount() {
+		return missCount.get();
+	}
+
+	/**
+	 * Returns the number of images which have been evicted from the cache.
+	 */
+	public static long getEvictionCount() {
+		return evictionCount.get();
+	}
+
 	/**
 	 * Paints the representation to cache to the supplied Graphics.
 	 *
@@ -168,6 +341,10 @@ public abstract class CachedPainter {
 	/**
 	 * Creates the image to cache. This returns an opaque image, subclasses that
 	 * require translucency or transparency will need to override this method.
+	 * <p>
+	 * The image is a managed image, which Java2D can keep in video memory by
+	 * itself. Unlike a VolatileImage, it does not need to be validated and
+	 * repainted when the contents of video memory are lost.
 	 *
 	 * @param c      Component painting to
 	 * @param w      Width of image to create
@@ -179,126 +356,81 @@ public abstract class CachedPainter {
 		if (config == null) {
 			return new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
 		}
-		return config.createCompatibleVolatileImage(w, h);
+		return config.createCompatibleImage(w, h);
 	}
 
 	/**
-	 * Cache is used to cache an image based on a set of arguments.
+	 * The key of a cached image.
 	 */
-	private static class Cache {
-		// Maximum number of entries to cache
-
-		private int maxCount;
-		// The entries.
-		private java.util.List entries;
-
-		Cache(int maxCount) {
-			this.maxCount = maxCount;
-			entries = new ArrayList(maxCount);
+	private static class Key {
+		private final GraphicsConfiguration config;
+		private final int w;
+		private final int h;
+		private final Object args;
+		private final int hash;
+
+		Key(GraphicsConfiguration config, int w, int h, Object args) {
+			this.config = config;
+			this.w = w;
+			this.h = h;
+			this.args = args;
+			int hash = (config == null) ? 0 : config.hashCode();
+			hash = hash * 31 + w;
+			hash = hash * 31 + h;
+			hash = hash * 31 + ((args == null) ? 0 : args.hashCode());
+			this.hash = hash;
 		}
 
-		synchronized void setMaxCount(int maxCount) {
-			this.maxCount = maxCount;
+		@Override
+		public int hashCode() {
+			return hash;
 		}
 
-		public int getMaxCount() {
-			return maxCount;
-		}
-
-		private Entry getEntry(Object key, GraphicsConfiguration config, int w, int h, Object args) {
-			synchronized (this) {
-				Entry entry;
-				for (int counter = entries.size() - 1; counter >= 0; counter--) {
-					entry = (Entry) ((SoftReference) entries.get(counter)).get();
-					if (entry == null) {
-						// SoftReference was invalidated, remove the entry
-						entries.remove(counter);
-					} else if (entry.equals(config, w, h, args)) {
-						// Found the entry, return it.
-						return entry;
-					}
-				}
-				// Entry doesn't exist
-				entry = new Entry(config, w, h, args);
-				if (entries.size() == maxCount) {
-					entries.remove(0);
-				}
-				entries.add(new SoftReference(entry));
-				return entry;
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
 			}
-		}
-
-		/**
-		 * Returns the cached Image, or null, for the specified arguments.
-		 */
-		public Image getImage(Object key, GraphicsConfiguration config, int w, int h, Object args) {
-			Entry entry = getEntry(key, config, w, h, args);
-			return entry.getImage();
-		}
-
-		/**
-		 * Sets the cached image for the specified constraints.
-		 */
-		public void setImage(Object key, GraphicsConfiguration config, int w, int h, Object args, Image image) {
-			Entry entry = getEntry(key, config, w, h, args);
-			entry.setImage(image);
-		}
-
-		/**
-		 * Caches set of arguments and Image.
-		 */
-		private static class Entry {
-
-			private GraphicsConfiguration config;
-			private Object args;
-			private Image image;
-			private int w;
-			private int h;
-
-			Entry(GraphicsConfiguration config, int w, int h, Object args) {
-				this.config = config;
-				this.args = args;
-				this.w = w;
-				this.h = h;
-			}
-
-			public void setImage(Image image) {
-				this.image = image;
-			}
-
-			public Image getImage() {
-				return image;
+			if (!(o instanceof Key)) {
+				return false;
 			}
+			Key that = (Key) o;
+			return this.hash == that.hash && this.w == that.w && this.h == that.h
+					&& (this.config == null ? that.config == null : this.config.equals(that.config))
+					&& (this.args == null ? that.args == null : this.args.equals(that.args));
+		}
 
-			@Override
-			public String toString() {
-				StringBuilder value = new StringBuilder(
-						super.toString() + "[ graphicsConfig=" + config + ", image=" + image + ", w=" + w + ", h=" + h);
-				if (args != null) {
-					value.append(", ");
-					value.append(args);
-				}
-				value.append("]");
-				return value.toString();
+		@Override
+		public String toString() {
+			StringBuilder value = new StringBuilder(
+					super.toString() + "[ graphicsConfig=" + config + ", w=" + w + ", h=" + h);
+			if (args != null) {
+				value.append(", ");
+				value.append(args);
 			}
+			value.append("]");
+			return value.toString();
+		}
+	}
 
-			public boolean equals(GraphicsConfiguration config, int w, int h, Object args) {
-				if (this.w == w && this.h == h && ((this.config != null && this.config.equals(config))
-						|| (this.config == null && config == null))) {
-					if (this.args == null && args == null) {
-						return true;
-					}
-					if (this.args != null && args != null) {
-
-						if (!this.args.equals(args)) {
-							return false;
-						}
-
-						return true;
-					}
-				}
-				return false;
-			}
+	/**
+	 * A cached image.
+	 */
+	private static class Entry {
+		private final CachedPainter owner;
+		private final Key key;
+		private final Image image;
+		private final long pixels;
+		/** The value of the clock, when the image was used last. */
+		private volatile long lastUse;
+		/** A snapshot of lastUse, used for sorting. */
+		private long sortKey;
+
+		Entry(CachedPainter owner, Key key, Image image, long pixels) {
+			this.owner = owner;
+			this.key = key;
+			this.image = image;
+			this.pixels = pixels;
 		}
 	}
 
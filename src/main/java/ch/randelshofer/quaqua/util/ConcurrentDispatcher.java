@@ -1,5 +1,5 @@
 /*
- * @(#)ConcurrentDispatcher.java  2.1  2009-06-01
+ * @(#)ConcurrentDispatcher.java  3.0  2026-10-17
  *
  * Copyright (c) 2002-2010 Werner Randelshofer, Switzerland
  * All rights reserved.
@@ -10,20 +10,33 @@
  */
 package ch.randelshofer.quaqua.util;
 
-import java.util.LinkedList;
+import java.util.PriorityQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Processes Runnable objects concurrently on a pool of processor threads. The
  * order in which the runnable objects are processed is not necesseraly the same
- * in which they were added to the dispatcher. There is one thread pool per
- * instance.
+ * in which they were added to the dispatcher.
+ * <p>
+ * Each instance has its own queue, but all instances share one bounded pool of
+ * daemon threads. The threads are reused, and they terminate when they have
+ * been idle for a while. The number of runnables an instance processes
+ * concurrently is limited by its maximal thread count.
+ * <p>
+ * Runnables with a higher priority are processed first. Runnables with the same
+ * priority are processed in FIFO order, unless they were dispatched in LIFO
+ * order, in which case they are processed before all FIFO runnables of the same
+ * priority.
  * <p>
  * Design pattern used: Acceptor Role in design pattern: EventCollector and
  * EventProcessor
  * <p>
  * <b>Example</b> <br>
  * The following program prints "Hello World" on the processor thread:
- * 
+ *
  * <pre>
  * // Create the Dispatcher.
  * ConcurrentDispatcher dispatcher = new ConcurrentDispatcher();
@@ -40,12 +53,29 @@ import java.util.LinkedList;
  * </pre>
  *
  * @author Werner Randelshofer, Switzerland
- * @version 2.1 2009-06-01 Added dispose method. <br>
+ * @version 3.0 2026-10-17 Runs on a shared thread pool. Added priorities,
+ *          cancellation and metrics. <br>
+ *          2.1 2009-06-01 Added dispose method. <br>
  *          2.0 2002-04-07 dispatchLIFO added. <br>
  *          1.0 2002-05-18 Created.
  */
 public class ConcurrentDispatcher {
 
+	/**
+	 * The maximal number of threads in the shared thread pool. The runnables are
+	 * typically I/O bound, so we allow more threads than there are processors.
+	 */
+	private static final int SHARED_POOL_SIZE = Math.max(8, 2 * Runtime.getRuntime().availableProcessors());
+	/**
+	 * The time in seconds after which an idle thread of the shared thread pool
+	 * terminates.
+	 */
+	private static final long SHARED_POOL_KEEP_ALIVE = 30;
+	/**
+	 * The thread pool shared by all instances. It is lazily created.
+	 */
+	private static ThreadPoolExecutor sharedExecutor;
+
 	/**
 	 * The priority of the processor thread.
 	 */
@@ -54,7 +84,11 @@ public class ConcurrentDispatcher {
 	 * The queue stores the events until they can be processed by a processor
 	 * thread.
 	 */
-	private final LinkedList queue = new LinkedList();
+	private final PriorityQueue<Entry> queue = new PriorityQueue<>();
+	/**
+	 * The sequence number of the most recently enqueued entry.
+	 */
+	private long sequence;
 	/**
 	 * Number of concurrent threads.
 	 */
@@ -63,6 +97,15 @@ public class ConcurrentDispatcher {
 	 * Maximum number of concurrent threads.
 	 */
 	private int maxThreadCount;
+	/**
+	 * Number of runnables which have been processed.
+	 */
+	private long completedCount;
+	/**
+	 * Number of runnables which have been removed from the queue by stop or
+	 * dispose.
+	 */
+	private long cancelledCount;
 	/**
 	 * Set the policy to enqueue the runnable for later execution if there are no
 	 * available threads in the pool.
@@ -78,6 +121,33 @@ public class ConcurrentDispatcher {
 	 */
 	private int blockingPolicy = ENQUEUE_WHEN_BLOCKED;
 
+	/**
+	 * A queued runnable.
+	 */
+	private static class Entry implements Comparable<Entry> {
+		final Runnable runner;
+		final int priority;
+		/**
+		 * Positive for FIFO entries, negative for LIFO entries, so that LIFO entries
+		 * are taken before FIFO entries, and the newest LIFO entry first.
+		 */
+		final long sequence;
+
+		Entry(Runnable runner, int priority, long sequence) {
+			this.runner = runner;
+			this.priority = priority;
+			this.sequence = sequence;
+		}
+
+		@Override
+		public int compareTo(Entry that) {
+			if (this.priority != that.priority) {
+				return (this.priority > that.priority) ? -1 : 1;
+			}
+			return (this.sequence < that.sequence) ? -1 : ((this.sequence == that.sequence) ? 0 : 1);
+		}
+	}
+
 	/**
 	 * Creates a new ConcurrentDispatcher and sets the priority of the processor
 	 * thread to java.lang.Thread.NORM_PRIORITY and with up to five concurrent
@@ -99,15 +169,46 @@ public class ConcurrentDispatcher {
 		this.maxThreadCount = maxThreadCount;
 	}
 
+	/**
+	 * Returns the thread pool shared by all instances.
+	 */
+	private static synchronized ThreadPoolExecutor getSharedExecutor() {
+		if (sharedExecutor == null) {
+			ThreadFactory threadFactory = new ThreadFactory() {
+				private int threadNumber;
+
+				@Override
+				public synchronized Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "ConcurrentDispatcher Processor " + (++threadNumber));
+					// The processor threads are daemons, because the
+					// runnables only compute data for the user interface.
+					try {
+						t.setDaemon(true);
+					} catch (SecurityException e) {
+						e.printStackTrace();
+					}
+					return t;
+				}
+			};
+			sharedExecutor = new ThreadPoolExecutor(SHARED_POOL_SIZE, SHARED_POOL_SIZE, SHARED_POOL_KEEP_ALIVE,
+					TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), threadFactory);
+			sharedExecutor.allowCoreThreadTimeOut(true);
+		}
+		return sharedExecutor;
+	}
+
 	/**
 	 * Sets the maximum number of concurrent threads.
-	 * 
+	 *
 	 * @param maxThreadCount Maximal number of concurrent threads. A value of zero
 	 *                       or below zero stops the dispatcher when the queue is
 	 *                       empty.
 	 */
 	public void setMaxThreadCount(int maxThreadCount) {
-		this.maxThreadCount = maxThreadCount;
+		synchronized (queue) {
+			this.maxThreadCount = maxThreadCount;
+			startProcessors();
+		}
 	}
 
 	/**
@@ -121,55 +222,36 @@ public class ConcurrentDispatcher {
 	 * Enqueues the Runnable object, and executes it on a processor thread.
 	 */
 	public void dispatch(Runnable runner) {
-		dispatch(runner, false);
+		dispatch(runner, 0, false);
 	}
 
 	/**
 	 * Enqueues the Runnable object, and executes it on a processor thread.
+	 *
+	 * @param runner The runnable.
+	 * @param isLIFO Set this to true, if the runnable shall be processed before the
+	 *               runnables that are already in the queue.
 	 */
 	public void dispatch(Runnable runner, boolean isLIFO) {
-		isLIFO = false;
-		synchronized (queue) {
-			if (threadCount < maxThreadCount) {
-				if (isLIFO) {
-					queue.addFirst(runner);
-				} else {
-					queue.addLast(runner);
-				}
-
-				Thread processor = new Thread(this + " Processor") {
-
-					@Override
-					public void run() {
-						processEvents();
-					}
-				};
-				threadCount++;
-
-				// The processor thread must not be a daemon,
-				// or else the Java VM might stop before
-				// all runnables have been processed.
-				try {
-					processor.setDaemon(false);
-				} catch (SecurityException e) {
-					e.printStackTrace();
-				}
-				try {
-					processor.setPriority(priority);
-				} catch (SecurityException e) {
-					e.printStackTrace();
-				}
-
-				processor.start();
-				return;
-
-			} else if (blockingPolicy == ENQUEUE_WHEN_BLOCKED) {
-				if (isLIFO) {
-					queue.addFirst(runner);
-				} else {
-					queue.addLast(runner);
-				}
+		dispatch(runner, 0, isLIFO);
+	}
 
+	/**
+	 * Enqueues the Runnable object, and executes it on a processor thread.
+	 *
+	 * @param runner   The runnable.
+	 * @param priority The priority of the runnable. Runnables with a higher
+	 *                 priority are processed first.
+	 * @param isLIFO   Set this to true, if the runnable shall be processed before
+	 *                 the runnables with the same priority that are already in the
+	 *                 queue.
+	 */
+	public void dispatch(Runnable runner, int priority, boolean isLIFO) {
+		synchronized (queue) {
+			if (threadCount < maxThreadCount || blockingPolicy == ENQUEUE_WHEN_BLOCKED) {
+				sequence++;
+				queue.add(new Entry(runner, priority, isLIFO ? -sequence : sequence));
+				startProcessors();
 				return;
 			}
 		}
@@ -179,8 +261,36 @@ public class ConcurrentDispatcher {
 		runner.run();
 	}
 
-	public void stop() {
+	/**
+	 * Starts processors on the shared thread pool until there is one processor per
+	 * queued runnable, or until the maximal number of concurrent threads is
+	 * reached.
+	 * <p>
+	 * This method must be called while holding the lock on the queue.
+	 */
+	private void startProcessors() {
+		while (threadCount < maxThreadCount && threadCount < queue.size()) {
+			threadCount++;
+			getSharedExecutor().execute(new Runnable() {
 
+				@Override
+				public void run() {
+					processEvents();
+				}
+			});
+		}
+	}
+
+	/**
+	 * Cancels all runnables which have not been started yet. Runnables which are
+	 * currently being processed run to completion. The dispatcher can be used again
+	 * after it has been stopped.
+	 */
+	public void stop() {
+		synchronized (queue) {
+			cancelledCount += queue.size();
+			queue.clear();
+		}
 	}
 
 	/**
@@ -188,29 +298,99 @@ public class ConcurrentDispatcher {
 	 * The method returns when the queue is empty.
 	 */
 	protected void processEvents() {
-		Object runner;
-		loop: while (true) {
-			synchronized (queue) {
-				if (queue.isEmpty()) {
-					threadCount--;
-					break loop;
+		Thread thread = Thread.currentThread();
+		int oldPriority = thread.getPriority();
+		try {
+			thread.setPriority(priority);
+		} catch (SecurityException e) {
+			e.printStackTrace();
+		}
+		try {
+			Runnable runner;
+			loop: while (true) {
+				synchronized (queue) {
+					if (queue.isEmpty() || threadCount > maxThreadCount) {
+						threadCount--;
+						break loop;
+					}
+					runner = queue.poll().runner;
+				}
+				try {
+					runner.run();
+				} catch (Throwable e) {
+					e.printStackTrace();
+				}
+				synchronized (queue) {
+					completedCount++;
 				}
-				runner = queue.removeFirst();
 			}
+		} finally {
 			try {
-				((Runnable) runner).run();
-			} catch (Throwable e) {
+				thread.setPriority(oldPriority);
+			} catch (SecurityException e) {
 				e.printStackTrace();
 			}
 		}
 	}
 
 	/**
-	 * Disposes the dispatcher and all associated processes.
+	 * Returns the number of runnables which are waiting in the queue.
 	 */
-	public void dispose() {
+	public int getQueueSize() {
 		synchronized (queue) {
-			queue.clear();
+			return queue.size();
 		}
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Returns the number of threads which are currently processing runnables of
+	 * this dispatcher.
+	 */
+	public int getActiveCount() {
+		synchronized (queue) {
+			return threadCount;
+		}
+	}
+
+	/**
+	 * Returns the number of runnables which have been processed by this
+	 * dispatcher.
+	 */
+	public long getCompletedCount() {
+		synchronized (queue) {
+			return completedCount;
+		}
+	}
+
+	/**
+	 * Returns the number of runnables which have been removed from the queue by
+	 * {@link #stop} or {@link #dispose} before they could be processed.
+	 */
+	public long getCancelledCount() {
+		synchronized (queue) {
+			return cancelledCount;
+		}
+	}
+
+	/**
+	 * Returns the number of threads in the thread pool shared by all instances.
+	 */
+	public static int getSharedPoolSize() {
+		return getSharedExecutor().getPoolSize();
+	}
+
+	/**
+	 * Returns the number of threads in the thread pool shared by all instances,
+	 * which are currently processing runnables.
+	 */
+	public static int getSharedActiveCount() {
+		return getSharedExecutor().getActiveCount();
+	}
+
+	/**
+	 * Disposes the dispatcher and all associated processes.
+	 */
+	public void dispose() {
+		stop();
+	}
+}
@@ -9,40 +9,56 @@
 package ch.randelshofer.quaqua.util;
 
 import java.awt.Image;
-import java.awt.Toolkit;
-import java.awt.image.FilteredImageSource;
-import java.awt.image.ImageFilter;
-import java.awt.image.ImageProducer;
-import java.awt.image.RGBImageFilter;
 
 /**
  * HalfbrightFilter reduces the brightness of an image by 50 percent. Leaves the
  * alpha channel untouched. This is used by the Quaqua Look and Feel, to create
  * a pressed image.
+ * <p>
+ * The halfbright images created with {@link #createHalfbrightImage} are cached
+ * per source image.
  *
  * @author Werner Randelshofer
  * @version 1.0 28 March 2005 Created.
  */
-public class HalfbrightFilter extends RGBImageFilter {
+public class HalfbrightFilter extends PixelFilter {
+	private static HalfbrightFilter instance;
+
 	/** Creates a new instance. */
 	public HalfbrightFilter() {
-		canFilterIndexColorModel = true;
+	}
+
+	/**
+	 * Returns the shared instance.
+	 */
+	public static synchronized HalfbrightFilter getInstance() {
+		if (instance == null) {
+			instance = new HalfbrightFilter();
+		}
+		return instance;
 	}
 
 	/**
 	 * Creates a halfbright image
 	 */
 	public static Image createHalfbrightImage(Image i) {
-		ImageFilter filter = new HalfbrightFilter();
-		ImageProducer prod = new FilteredImageSource(i.getSource(), filter);
-		Image filteredImage = Toolkit.getDefaultToolkit().createImage(prod);
-		return filteredImage;
+		return getInstance().filter(i);
 	}
 
 	@Override
 	public int filterRGB(int x, int y, int rgb) {
+		return filterPixel(rgb);
+	}
+
+	@Override
+	protected void filterPixels(int[] pixels, int off, int len) {
+		for (int i = off, n = off + len; i < n; i++) {
+			pixels[i] = filterPixel(pixels[i]);
+		}
+	}
+
+	private static int filterPixel(int rgb) {
 		return rgb & 0xff000000 // preserve alpha channel
 				| (rgb & 0xfefefe) >>> 1;
 	}
-
 }
@@ -16,9 +16,7 @@ import java.awt.Toolkit;
 import java.awt.Transparency;
 import java.awt.image.BufferedImage;
 import java.awt.image.ColorModel;
-import java.awt.image.FilteredImageSource;
 import java.awt.image.PixelGrabber;
-import java.awt.image.RGBImageFilter;
 import java.awt.image.Raster;
 import java.awt.image.RenderedImage;
 import java.awt.image.WritableRaster;
@@ -46,7 +44,7 @@ public class Images {
 
 	private static GraphiteFilter graphiteFilter;
 
-	private static GraphiteFilter getGraphiteFilter() {
+	private static synchronized GraphiteFilter getGraphiteFilter() {
 		if (graphiteFilter == null) {
 			graphiteFilter = new GraphiteFilter();
 		}
@@ -61,6 +59,11 @@ public class Images {
 		return createImage(resource);
 	}
 
+	/**
+	 * Creates an image from a resource. If the graphite appearance is active, the
+	 * image is loaded and converted to graphite right away. Otherwise it is loaded
+	 * lazily by the toolkit.
+	 */
 	public static Image createImage(URL resource) {
 		Image image = Toolkit.getDefaultToolkit().createImage(resource);
 		if (OSXPreferences.getString(OSXPreferences.GLOBAL_PREFERENCES, "AppleAquaColorVariant", "1").equals("6")) {
@@ -109,19 +112,32 @@ public class Images {
 	 * http://javaalmanac.com/egs/java.awt.image/Image2Buf.html?l=rel
 	 */
 	private static Image toGraphite(Image image) {
-		return Toolkit.getDefaultToolkit().createImage(new FilteredImageSource(image.getSource(), getGraphiteFilter()));
+		// The image is not cached by the filter, because the image is created
+		// anew for each call.
+		return getGraphiteFilter().filter(toBufferedImage(image), null);
 	}
 
 	/**
 	 * The graphite filter converts Mac OS X artwork from "Blue Appearance" to
 	 * "Graphite Appearance" by desaturing the colors.
 	 */
-	public static class GraphiteFilter extends RGBImageFilter {
+	public static class GraphiteFilter extends PixelFilter {
 
 		private final static float saturationAdjust = 0.179f;
 
 		@Override
 		public int filterRGB(int x, int y, int rgb) {
+			return filterPixel(rgb);
+		}
+
+		@Override
+		protected void filterPixels(int[] pixels, int off, int len) {
+			for (int i = off, n = off + len; i < n; i++) {
+				pixels[i] = filterPixel(pixels[i]);
+			}
+		}
+
+		private static int filterPixel(int rgb) {
 			int alpha = rgb & 0xff000000;
 			int red = (rgb >>> 16) & 0xff;
 			int green = (rgb >>> 8) & 0xff;
@@ -144,8 +160,8 @@ public class Images {
 		if (rImg instanceof BufferedImage) {
 			image = (BufferedImage) rImg;
 		} else {
-			Raster r = rImg.getData();
-			WritableRaster wr = Raster.createWritableRaster(r.getSampleModel(), null);
+			WritableRaster wr = Raster.createWritableRaster(
+					rImg.getSampleModel().createCompatibleSampleModel(rImg.getWidth(), rImg.getHeight()), null);
 			rImg.copyData(wr);
 			image = new BufferedImage(rImg.getColorModel(), wr, rImg.getColorModel().isAlphaPremultiplied(), null);
 		}
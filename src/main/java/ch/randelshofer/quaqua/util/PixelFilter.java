@@ -0,0 +1,145 @@
+/*
+ * @(#)PixelFilter.java
+ *
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package ch.randelshofer.quaqua.util;
+
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.awt.image.RGBImageFilter;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * An RGBImageFilter, which can also filter the pixels of an image in bulk.
+ * <p>
+ * The method {@link #filter(Image)} does not use the image producer and
+ * consumer pipeline. It copies the pixels of the image into an int array,
+ * filters the array in place, and copies it into a new image of type
+ * TYPE_INT_ARGB. The pixels are copied through the rasters of the images, so
+ * that Java2D can still keep the images in video memory. Large images are
+ * filtered concurrently in slices of rows on the common fork join pool. The
+ * result is cached per source image, as long as the source image is reachable.
+ * Thus the source image must not be modified after it has been filtered.
+ * <p>
+ * Subclasses must filter the pixels in {@link #filterPixels} in the same way as
+ * in {@link #filterRGB}, and must not depend on the position of a pixel.
+ *
+ * @version $Id$
+ */
+public abstract class PixelFilter extends RGBImageFilter {
+	/**
+	 * The minimal number of pixels of an image, which is filtered concurrently.
+	 */
+	private final static int PARALLEL_MIN_PIXELS = 256 * 256;
+
+	/**
+	 * The filtered images. The source image is weakly referenced.
+	 */
+	private final Map<Image, BufferedImage> cache = new WeakHashMap<Image, BufferedImage>();
+
+	/** Creates a new instance. */
+	public PixelFilter() {
+		canFilterIndexColorModel = true;
+	}
+
+	/**
+	 * Filters an array of non-premultiplied ARGB pixels in place.
+	 *
+	 * @param pixels The pixels.
+	 * @param off    The index of the first pixel.
+	 * @param len    The number of pixels.
+	 */
+	protected abstract void filterPixels(int[] pixels, int off, int len);
+
+	/**
+	 * Returns the filtered image of the specified image. If the image has been
+	 * filtered before, the cached result is returned.
+	 *
+	 * @param img The source image.
+	 * @return The filtered image of type TYPE_INT_ARGB. The filtered image must
+	 *         not be modified, because it is shared.
+	 */
+	public BufferedImage filter(Image img) {
+		BufferedImage result;
+		synchronized (cache) {
+			result = cache.get(img);
+		}
+		if (result == null) {
+			result = filter(Images.toBufferedImage(img), null);
+			synchronized (cache) {
+				cache.put(img, result);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Filters an image into a destination image. The result is not cached.
+	 *
+	 * @param src The source image.
+	 * @param dst The destination image, or null. The destination image is only
+	 *            used, if it is of type TYPE_INT_ARGB and has the size of the
+	 *            source image. It may be the source image.
+	 * @return The destination image, or a new image of type TYPE_INT_ARGB.
+	 */
+	public BufferedImage filter(BufferedImage src, BufferedImage dst) {
+		int width = src.getWidth();
+		int height = src.getHeight();
+		if (dst == null || dst.getType() != BufferedImage.TYPE_INT_ARGB || dst.getWidth() != width
+				|| dst.getHeight() != height) {
+			dst = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		}
+
+		// We must not access the data buffers of the images directly, because
+		// this would prevent Java2D from keeping them in video memory.
+		int[] pixels = new int[width * height];
+		if (src.getType() == BufferedImage.TYPE_INT_ARGB) {
+			src.getRaster().getDataElements(0, 0, width, height, pixels);
+		} else {
+			src.getRGB(0, 0, width, height, pixels, 0, width);
+		}
+
+		if ((long) width * height >= PARALLEL_MIN_PIXELS && ForkJoinPool.getCommonPoolParallelism() > 1) {
+			int sliceSize = Math.max(1, height / (4 * ForkJoinPool.getCommonPoolParallelism()));
+			ForkJoinPool.commonPool().invoke(new FilterTask(pixels, width, 0, height, sliceSize));
+		} else {
+			filterPixels(pixels, 0, width * height);
+		}
+		dst.getRaster().setDataElements(0, 0, width, height, pixels);
+		return dst;
+	}
+
+	/**
+	 * Filters a range of rows.
+	 */
+	private class FilterTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final int[] pixels;
+		private final int width;
+		private final int from, to, sliceSize;
+
+		FilterTask(int[] pixels, int width, int from, int to, int sliceSize) {
+			this.pixels = pixels;
+			this.width = width;
+			this.from = from;
+			this.to = to;
+			this.sliceSize = sliceSize;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > sliceSize) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new FilterTask(pixels, width, from, mid, sliceSize),
+						new FilterTask(pixels, width, mid, to, sliceSize));
+				return;
+			}
+			filterPixels(pixels, from * width, (to - from) * width);
+		}
+	}
+}
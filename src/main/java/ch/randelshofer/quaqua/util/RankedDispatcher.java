@@ -0,0 +1,274 @@
+/*
+ * @(#)RankedDispatcher.java
+ *
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package ch.randelshofer.quaqua.util;
+
+import java.util.HashMap;
+import java.util.PriorityQueue;
+
+/**
+ * Processes Runnable objects sequentially on a processor thread. Each runnable
+ * is queued under a key. The runnable whose key has been dispatched or re-ranked
+ * most recently is processed first.
+ * <p>
+ * This is useful for work that is requested on behalf of items on the screen.
+ * If the items request their work each time they are painted, the work for the
+ * items that are currently visible is always done first, and the work for items
+ * that have been scrolled away sinks to the end of the queue.
+ * <p>
+ * Design pattern used: Acceptor Role in design pattern: EventCollector and
+ * EventProcessor
+ *
+ * @version $Id$
+ */
+public class RankedDispatcher {
+	private Thread eventProcessor;
+	private int threadPriority;
+	/**
+	 * Maps keys to their current entries.
+	 */
+	private final HashMap<Object, Entry> entries = new HashMap<>();
+	/**
+	 * Holds the entries ordered by rank. The queue may contain entries that have
+	 * been re-ranked or removed. They are skipped when they are taken from the
+	 * queue.
+	 */
+	private final PriorityQueue<Entry> queue = new PriorityQueue<>();
+	/**
+	 * The rank given to the most recently dispatched or re-ranked entry.
+	 */
+	private long rank;
+	/**
+	 * Indicates whether events will be processed by the event processor or not.
+	 */
+	private volatile boolean isAlive = true;
+
+	/**
+	 * A queued runnable.
+	 */
+	private static class Entry implements Comparable<Entry> {
+		final Object key;
+		final Runnable runner;
+		final long rank;
+
+		Entry(Object key, Runnable runner, long rank) {
+			this.key = key;
+			this.runner = runner;
+			this.rank = rank;
+		}
+
+		@Override
+		public int compareTo(Entry that) {
+			return (this.rank > that.rank) ? -1 : ((this.rank == that.rank) ? 0 : 1);
+		}
+	}
+
+	/**
+	 * Creates a new RankedDispatcher which processes Runnable objects at
+	 * java.lang.Thread.NORM_PRIORITY.
+	 */
+	public RankedDispatcher() {
+		this(Thread.NORM_PRIORITY);
+	}
+
+	/**
+	 * Creates a new RankedDispatcher which processes Runnable Objects at the
+	 * desired thread priority.
+	 *
+	 * @param priority The Thread priority of the event processor.
+	 */
+	public RankedDispatcher(int priority) {
+		this.threadPriority = priority;
+	}
+
+	/**
+	 * Queues the Runnable object for later execution on the processor thread. The
+	 * runnable is used as its own key.
+	 */
+	public void dispatch(Runnable r) {
+		dispatch(r, r);
+	}
+
+	/**
+	 * Queues the Runnable object under the specified key for later execution on
+	 * the processor thread. If a runnable is already queued under the key, no
+	 * new runnable is queued, but the queued runnable is re-ranked to be processed
+	 * first.
+	 *
+	 * @param key The key.
+	 * @param r   The runnable.
+	 */
+	public void dispatch(Object key, Runnable r) {
+		synchronized (queue) {
+			Entry entry = entries.get(key);
+			entry = new Entry(key, (entry == null) ? r : entry.runner, ++rank);
+			entries.put(key, entry);
+			queue.add(entry);
+			compact();
+			if (isAlive) {
+				startProcessor();
+			}
+		}
+	}
+
+	/**
+	 * Re-ranks the runnable which is queued under the specified key, so that it is
+	 * processed first.
+	 *
+	 * @param key The key.
+	 * @return Returns true if a runnable was queued under the key.
+	 */
+	public boolean rerank(Object key) {
+		synchronized (queue) {
+			Entry entry = entries.get(key);
+			if (entry == null) {
+				return false;
+			}
+			// Only re-rank, if another entry has been ranked in between.
+			if (entry.rank != rank) {
+				entry = new Entry(key, entry.runner, ++rank);
+				entries.put(key, entry);
+				queue.add(entry);
+				compact();
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Removes the runnable which is queued under the specified key.
+	 *
+	 * @param key The key.
+	 * @return Returns true if a runnable was queued under the key.
+	 */
+	public boolean remove(Object key) {
+		synchronized (queue) {
+			return entries.remove(key) != null;
+		}
+	}
+
+	/**
+	 * Returns the number of runnables which are waiting in the queue.
+	 */
+	public int getQueueSize() {
+		synchronized (queue) {
+			return entries.size();
+		}
+	}
+
+	/**
+	 * Starts the event processor. <br>
+	 * The event processor is started by default.
+	 */
+	public void start() {
+		synchronized (queue) {
+			isAlive = true;
+			startProcessor();
+		}
+	}
+
+	/**
+	 * Stops the event processor.
+	 */
+	public void stop() {
+		synchronized (queue) {
+			isAlive = false;
+		}
+	}
+
+	/**
+	 * Clears the event queue.
+	 */
+	public void clear() {
+		synchronized (queue) {
+			entries.clear();
+			queue.clear();
+		}
+	}
+
+	public void dispose() {
+		stop();
+		clear();
+	}
+
+	/**
+	 * Removes the stale entries from the queue, if there are many more of them than
+	 * live entries.
+	 * <p>
+	 * This method must be called while holding the lock on the queue.
+	 */
+	private void compact() {
+		if (queue.size() > 64 + 2 * entries.size()) {
+			queue.clear();
+			queue.addAll(entries.values());
+		}
+	}
+
+	/**
+	 * This is the method which really starts the processor.
+	 */
+	private void startProcessor() {
+		synchronized (queue) {
+			if (eventProcessor == null && !entries.isEmpty()) {
+				eventProcessor = new Thread(this + " Event Processor") {
+					@Override
+					public void run() {
+						processEvents();
+					}
+				};
+				try {
+					// The runnables only compute data for the user interface,
+					// so the event processor may be a daemon.
+					eventProcessor.setDaemon(true);
+				} catch (SecurityException e) {
+				}
+				try {
+					eventProcessor.setPriority(threadPriority);
+				} catch (SecurityException e) {
+				}
+				eventProcessor.start();
+			}
+		}
+	}
+
+	/**
+	 * This method removes runnables from the queue and processes them until the
+	 * queue is empty or until #stop is called.
+	 * <p>
+	 * This method must be called from the event processor thread only.
+	 */
+	protected void processEvents() {
+		Runnable runner;
+		while (true) {
+			synchronized (queue) {
+				runner = null;
+				while (runner == null) {
+					if (entries.isEmpty()) {
+						// Only stale entries are left in the queue.
+						queue.clear();
+						eventProcessor = null;
+						return;
+					}
+					if (!isAlive) {
+						eventProcessor = null;
+						return;
+					}
+					Entry entry = queue.poll();
+					// Skip entries which have been re-ranked or removed.
+					if (entry != null && entries.get(entry.key) == entry) {
+						entries.remove(entry.key);
+						runner = entry.runner;
+					}
+				}
+			}
+			try {
+				runner.run();
+			} catch (Throwable e) {
+				e.printStackTrace();
+			}
+		}
+	}
+}
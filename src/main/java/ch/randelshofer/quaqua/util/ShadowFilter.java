@@ -9,39 +9,55 @@
 package ch.randelshofer.quaqua.util;
 
 import java.awt.Image;
-import java.awt.Toolkit;
-import java.awt.image.FilteredImageSource;
-import java.awt.image.ImageFilter;
-import java.awt.image.ImageProducer;
-import java.awt.image.RGBImageFilter;
 
 /**
  * ShadowFilter changes the color of an image to all black, and reduces the
  * alpha channel to 50 percent. This is used by the Quaqua Look and Feel, to
  * create a shadow image.
+ * <p>
+ * The shadow images created with {@link #createShadowImage} are cached per
+ * source image.
  *
  * @author Werner Randelshofer
  * @version 1.0 28 March 2005 Created.
  */
-public class ShadowFilter extends RGBImageFilter {
+public class ShadowFilter extends PixelFilter {
+	private static ShadowFilter instance;
 
 	/** Creates a new instance. */
 	public ShadowFilter() {
-		canFilterIndexColorModel = true;
+	}
+
+	/**
+	 * Returns the shared instance.
+	 */
+	public static synchronized ShadowFilter getInstance() {
+		if (instance == null) {
+			instance = new ShadowFilter();
+		}
+		return instance;
 	}
 
 	/**
 	 * Creates a shadow image
 	 */
 	public static Image createShadowImage(Image i) {
-		ImageFilter filter = new ShadowFilter();
-		ImageProducer prod = new FilteredImageSource(i.getSource(), filter);
-		Image filteredImage = Toolkit.getDefaultToolkit().createImage(prod);
-		return filteredImage;
+		return getInstance().filter(i);
 	}
 
 	@Override
 	public int filterRGB(int x, int y, int rgb) {
+		return filterPixel(rgb);
+	}
+
+	@Override
+	protected void filterPixels(int[] pixels, int off, int len) {
+		for (int i = off, n = off + len; i < n; i++) {
+			pixels[i] = filterPixel(pixels[i]);
+		}
+	}
+
+	private static int filterPixel(int rgb) {
 		return (rgb & 0xfe000000) >>> 1;
 	}
 }
@@ -14,6 +14,11 @@ import javax.swing.SwingUtilities;
  * dedicated event dispatcher.
  * <p>
  * This class is similar to SwingWorker but less complex.
+ * <p>
+ * A worker can be cancelled. If a worker is cancelled before it is run,
+ * #construct is not called. If it is cancelled while #construct is running,
+ * the worker thread is interrupted. In both cases, #done and #failed are not
+ * invoked, but #finished is.
  *
  * @author Werner Randelshofer
  * @version $Id$
@@ -22,6 +27,8 @@ public abstract class Worker<T> implements Runnable {
 
 	private T value; // see getValue(), setValue()
 	private Throwable error; // see getError(), setError()
+	private volatile boolean isCancelled; // see cancel(), isCancelled()
+	private Thread thread; // the thread which runs construct
 
 	/**
 	 * Calls #construct on the current thread and invokes #done on the AWT event
@@ -29,30 +36,65 @@ public abstract class Worker<T> implements Runnable {
 	 */
 	@Override
 	public final void run() {
+		synchronized (this) {
+			thread = Thread.currentThread();
+		}
 		try {
-			setValue(construct());
+			if (!isCancelled) {
+				setValue(construct());
+			}
 		} catch (Throwable e) {
 			setError(e);
-			SwingUtilities.invokeLater(new Runnable() {
-
-				@Override
-				public void run() {
-					failed(getError());
-					finished();
+		} finally {
+			synchronized (this) {
+				thread = null;
+				if (isCancelled) {
+					// Clear the interrupt that we may have delivered
+					Thread.interrupted();
 				}
-			});
-			return;
+			}
 		}
 		SwingUtilities.invokeLater(new Runnable() {
 
 			@Override
 			public void run() {
-				done(getValue());
+				if (!isCancelled) {
+					if (getError() != null) {
+						failed(getError());
+					} else {
+						done(getValue());
+					}
+				}
 				finished();
 			}
 		});
 	}
 
+	/**
+	 * Cancels the worker. If #construct is running, the worker thread is
+	 * interrupted. Long running implementations of #construct should check
+	 * #isCancelled or the interrupted state of the current thread, and return
+	 * early.
+	 * <p>
+	 * If this method is called on the AWT event dispatcher thread, it is
+	 * guaranteed that #done and #failed will not be invoked anymore.
+	 */
+	public void cancel() {
+		synchronized (this) {
+			isCancelled = true;
+			if (thread != null) {
+				thread.interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Returns true, if the worker has been cancelled.
+	 */
+	public boolean isCancelled() {
+		return isCancelled;
+	}
+
 	/**
 	 * Compute the value to be returned by the <code>get</code> method.
 	 */